@@ -0,0 +1,76 @@
+package common;
+
+/**
+ * Encodes geo-positions as geohash cells. The cells are represented as
+ * <code>long</code> values that contain the interleaved longitude/latitude
+ * bits instead of the usual base32 string representation.
+ *
+ * @author Martin Steiger
+ */
+public class GeoHash {
+
+    /**
+     * The number of bits per base32 character
+     */
+    public static final int BITS_PER_CHAR = 5;
+
+    /**
+     * @param lat latitude in degrees
+     * @param lon longitude in degrees
+     * @param bits the number of bits (precision) - at most 60
+     * @return the geohash cell that contains the position
+     */
+    public static long encode(double lat, double lon, int bits) {
+        if (bits < 1 || bits > 60) {
+            throw new IllegalArgumentException("bits must be in [1..60]");
+        }
+
+        double latMin = -90.0;
+        double latMax = 90.0;
+        double lonMin = -180.0;
+        double lonMax = 180.0;
+
+        long hash = 0;
+
+        for (int i = 0; i < bits; i++) {
+            hash <<= 1;
+
+            // even bits refine the longitude, odd bits the latitude
+            if (i % 2 == 0) {
+                double mid = (lonMin + lonMax) * 0.5;
+                if (lon >= mid) {
+                    hash |= 1;
+                    lonMin = mid;
+                } else {
+                    lonMax = mid;
+                }
+            } else {
+                double mid = (latMin + latMax) * 0.5;
+                if (lat >= mid) {
+                    hash |= 1;
+                    latMin = mid;
+                } else {
+                    latMax = mid;
+                }
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * @param bits the number of bits (precision)
+     * @return the height of a cell in degrees
+     */
+    public static double getCellHeight(int bits) {
+        return 180.0 / (1L << (bits / 2));
+    }
+
+    /**
+     * @param bits the number of bits (precision)
+     * @return the width of a cell in degrees
+     */
+    public static double getCellWidth(int bits) {
+        return 360.0 / (1L << ((bits + 1) / 2));
+    }
+}
@@ -1,5 +1,7 @@
 package common;
 
+import java.util.List;
+
 import main.GeoPos;
 
 import org.jxmapviewer.viewer.GeoPosition;
@@ -75,6 +77,26 @@ public class GeoUtils {
                 pos2.getLatitude(), pos2.getLongitude());
     }
 
+    /**
+     * Projects a route on a local plane in meters (equirectangular) with
+     * the first point as origin
+     *
+     * @param route the route (must not be empty)
+     * @param xs the x coordinates in meters (east)
+     * @param ys the y coordinates in meters (north)
+     */
+    public static void projectLocal(List<GeoPosition> route, double[] xs, double[] ys) {
+        GeoPosition origin = route.get(0);
+        double scale = Math.toRadians(1.0) * WGS84_MEAN_RADIUS;
+        double cosLat = Math.cos(Math.toRadians(origin.getLatitude()));
+
+        for (int i = 0; i < route.size(); i++) {
+            GeoPosition pos = route.get(i);
+            xs[i] = (pos.getLongitude() - origin.getLongitude()) * cosLat * scale;
+            ys[i] = (pos.getLatitude() - origin.getLatitude()) * scale;
+        }
+    }
+
     /**
      * Get a new {@link GeoPos} distanceMeters away on the compass bearing
      * azimuthDegrees from the {@link GeoPos} point - accurate to better than
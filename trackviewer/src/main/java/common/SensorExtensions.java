@@ -0,0 +1,64 @@
+package common;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import track.SensorChannel;
+import track.Track;
+
+/**
+ * Reads sensor values from the extensions of track points (e.g. the Garmin
+ * TrackPointExtension of GPX files or the ActivityExtension of TCX files)
+ *
+ * @author Martin Steiger
+ */
+public class SensorExtensions {
+
+    private static final Map<String, SensorChannel> ELEMENTS = new HashMap<>();
+
+    static {
+        ELEMENTS.put("hr", SensorChannel.HEART_RATE);
+        ELEMENTS.put("cad", SensorChannel.CADENCE);
+        ELEMENTS.put("RunCadence", SensorChannel.CADENCE);
+        ELEMENTS.put("power", SensorChannel.POWER);
+        ELEMENTS.put("Watts", SensorChannel.POWER);
+        ELEMENTS.put("atemp", SensorChannel.TEMPERATURE);
+    }
+
+    /**
+     * @param any the extension elements of a track point (DOM elements are read, others are ignored)
+     * @param track the track
+     * @param index the index of the track point
+     */
+    public static void read(List<Object> any, Track track, int index) {
+        for (Object obj : any) {
+            if (obj instanceof Element) {
+                read((Element) obj, track, index);
+            }
+        }
+    }
+
+    private static void read(Element element, Track track, int index) {
+        SensorChannel channel = ELEMENTS.get(element.getLocalName());
+
+        if (channel != null) {
+            try {
+                double value = Double.parseDouble(element.getTextContent().trim());
+                track.setSensorValue(channel, index, value);
+            } catch (NumberFormatException e) {
+                // ignore invalid values
+            }
+            return;
+        }
+
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                read((Element) child, track, index);
+            }
+        }
+    }
+}
@@ -6,7 +6,9 @@ import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.GregorianCalendar;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -18,8 +20,10 @@ import javax.xml.datatype.DatatypeFactory;
 
 import org.jxmapviewer.viewer.GeoPosition;
 
+import common.SensorExtensions;
 import track.Track;
 import track.TrackPoint;
+import track.Waypoint;
 
 import com.topografix.gpx._1._1.GpxType;
 import com.topografix.gpx._1._1.ObjectFactory;
@@ -69,6 +73,13 @@ public class GpxAdapter {
 
         ArrayList<Track> list = new ArrayList<>();
 
+        // waypoints are defined per file - they are shared by all its tracks
+        List<Waypoint> waypoints = new ArrayList<>();
+
+        for (WptType pt : gpx.getWpt()) {
+            waypoints.add(convertWaypoint(pt));
+        }
+
         int trackCount = 1;
 
         for (TrkType trk : gpx.getTrk()) {
@@ -95,6 +106,14 @@ public class GpxAdapter {
 
                     tp.setElevation(ele);
                     track.addPoint(tp);
+
+                    if (pt.getExtensions() != null) {
+                        SensorExtensions.read(pt.getExtensions().getAny(), track, track.getPoints().size() - 1);
+                    }
+                }
+
+                for (Waypoint wpt : waypoints) {
+                    track.addWaypoint(wpt);
                 }
 
                 list.add(track);
@@ -105,6 +124,27 @@ public class GpxAdapter {
         return list;
     }
 
+    private static Waypoint convertWaypoint(WptType pt) {
+        double lat = pt.getLat().doubleValue();
+        double lon = pt.getLon().doubleValue();
+
+        Waypoint wpt = new Waypoint(new GeoPosition(lat, lon));
+        wpt.setName(pt.getName());
+        wpt.setDescription(pt.getDesc());
+
+        if (pt.getEle() != null) {
+            wpt.setElevation(pt.getEle().doubleValue());
+        } else {
+            wpt.setElevation(Double.NaN);
+        }
+
+        if (pt.getTime() != null) {
+            wpt.setTime(pt.getTime().toGregorianCalendar().getTime());
+        }
+
+        return wpt;
+    }
+
     private GpxType unmarshallObject(InputStream is) throws JAXBException {
         Unmarshaller unmarshaller = context.createUnmarshaller();
 
@@ -118,6 +158,16 @@ public class GpxAdapter {
      * @throws IOException if the data cannot be read
      */
     public void write(OutputStream os, List<Track> tracks) throws IOException {
+        write(os, tracks, 0);
+    }
+
+    /**
+     * @param os the output stream
+     * @param tracks the list of tracks
+     * @param tolerance the simplification tolerance in meters (0 writes all points)
+     * @throws IOException if the data cannot be read
+     */
+    public void write(OutputStream os, List<Track> tracks, double tolerance) throws IOException {
         DatatypeFactory factory;
         try {
             factory = DatatypeFactory.newInstance();
@@ -127,11 +177,14 @@ public class GpxAdapter {
 
         GpxType gpx = new GpxType();
 
+        // the tracks of one file share its waypoints - write them only once
+        Set<Waypoint> waypoints = new LinkedHashSet<>();
+
         for (Track track : tracks) {
             TrkType trk = new TrkType();
             TrksegType seg = new TrksegType();
 
-            for (TrackPoint pt : track.getPoints()) {
+            for (TrackPoint pt : getPoints(track, tolerance)) {
                 WptType wpt = new WptType();
 
                 wpt.setLat(BigDecimal.valueOf(pt.getPos().getLatitude()));
@@ -147,6 +200,29 @@ public class GpxAdapter {
 
             trk.getTrkseg().add(seg);
             gpx.getTrk().add(trk);
+
+            waypoints.addAll(track.getWaypoints());
+        }
+
+        for (Waypoint pt : waypoints) {
+            WptType wpt = new WptType();
+
+            wpt.setLat(BigDecimal.valueOf(pt.getPos().getLatitude()));
+            wpt.setLon(BigDecimal.valueOf(pt.getPos().getLongitude()));
+            wpt.setName(pt.getName());
+            wpt.setDesc(pt.getDescription());
+
+            if (!Double.isNaN(pt.getElevation())) {
+                wpt.setEle(BigDecimal.valueOf(pt.getElevation()));
+            }
+
+            if (pt.getTime() != null) {
+                GregorianCalendar cal = new GregorianCalendar();
+                cal.setTime(pt.getTime());
+                wpt.setTime(factory.newXMLGregorianCalendar(cal));
+            }
+
+            gpx.getWpt().add(wpt);
         }
 
         try {
@@ -157,6 +233,29 @@ public class GpxAdapter {
 
     }
 
+    /**
+     * @param track the track
+     * @param tolerance the simplification tolerance in meters
+     * @return all track points if the tolerance is not positive, otherwise the simplified points
+     */
+    private static List<TrackPoint> getPoints(Track track, double tolerance) {
+        List<TrackPoint> points = track.getPoints();
+
+        // the ranking of the simplification is not needed to keep all points
+        if (tolerance <= 0) {
+            return points;
+        }
+
+        int[] indices = track.getSimplification().getIndices(tolerance);
+        List<TrackPoint> result = new ArrayList<>(indices.length);
+
+        for (int idx : indices) {
+            result.add(points.get(idx));
+        }
+
+        return result;
+    }
+
     private static <T> void marshallObject(OutputStream os, GpxType value) throws JAXBException {
         String packageName = value.getClass().getPackage().getName();
         JAXBContext context = JAXBContext.newInstance(packageName);
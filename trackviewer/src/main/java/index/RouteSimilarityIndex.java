@@ -0,0 +1,406 @@
+package index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jxmapviewer.viewer.GeoPosition;
+
+import main.GeoPos;
+import track.Track;
+
+import common.GeoHash;
+
+/**
+ * Finds tracks that follow the same route. Every track is reduced to the set
+ * of geohash cells along its path which is then condensed into a MinHash
+ * signature. Locality sensitive hashing over bands of the signature provides
+ * candidates quickly, they are then ranked by their geometric distance.
+ *
+ * @author Martin Steiger
+ */
+public class RouteSimilarityIndex {
+
+    private static final Log log = LogFactory.getLog(RouteSimilarityIndex.class);
+
+    private static final int FILE_VERSION = 2;
+
+    /**
+     * Precision of the geohash cells (7 chars, about 150m)
+     */
+    private static final int GEOHASH_BITS = 7 * GeoHash.BITS_PER_CHAR;
+
+    private static final int BANDS = 16;
+    private static final int ROWS = 4;
+    private static final int NUM_HASHES = BANDS * ROWS;
+
+    /**
+     * Number of points of a candidate that are checked against the query
+     */
+    private static final int SAMPLE_POINTS = 40;
+
+    /**
+     * Max. number of vertices of the polyline used for ranking
+     */
+    private static final int POLY_VERTICES = 200;
+
+    /**
+     * Candidates with a larger mean distance in meters are dropped
+     */
+    private static final double MAX_MEAN_DISTANCE = 100;
+
+    private static final long[] SEEDS = new long[NUM_HASHES];
+
+    static {
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            seed = mix(seed + i);
+            SEEDS[i] = seed;
+        }
+    }
+
+    private final Map<Track, long[]> signatures = new IdentityHashMap<>();
+    private final Map<Long, List<Track>> buckets = new HashMap<>();
+
+    /**
+     * Signatures read from disk that have not been claimed by a track yet
+     */
+    private final Map<Long, long[]> stored = new HashMap<>();
+
+    /**
+     * A similar track as found by {@link RouteSimilarityIndex#findSimilar}
+     */
+    public static class Match {
+
+        private final Track track;
+        private final double similarity;
+        private final double distance;
+
+        Match(Track track, double similarity, double distance) {
+            this.track = track;
+            this.similarity = similarity;
+            this.distance = distance;
+        }
+
+        /**
+         * @return the matching track
+         */
+        public Track getTrack() {
+            return track;
+        }
+
+        /**
+         * @return the estimated Jaccard similarity of the cell sets [0..1]
+         */
+        public double getSimilarity() {
+            return similarity;
+        }
+
+        /**
+         * @return the mean distance between the routes in meters
+         */
+        public double getDistance() {
+            return distance;
+        }
+    }
+
+    /**
+     * Adds a track to the index. If a signature for this track has been
+     * loaded before, it is re-used.
+     *
+     * @param track the track
+     */
+    public synchronized void add(Track track) {
+        if (track.getPoints().isEmpty() || signatures.containsKey(track)) {
+            return;
+        }
+
+        long key = getKey(track);
+        long[] sig = stored.remove(key);
+
+        if (sig == null) {
+            sig = computeSignature(computeCells(track.getRoute()));
+        }
+
+        signatures.put(track, sig);
+
+        for (int band = 0; band < BANDS; band++) {
+            long bandKey = getBandKey(sig, band);
+            List<Track> list = buckets.get(bandKey);
+            if (list == null) {
+                list = new ArrayList<>(2);
+                buckets.put(bandKey, list);
+            }
+            list.add(track);
+        }
+    }
+
+    /**
+     * @param query the track to compare against
+     * @return the list of similar tracks, ordered by distance (best first)
+     */
+    public List<Match> findSimilar(Track query) {
+        long[] sig;
+        Set<Track> candidates = new LinkedHashSet<>();
+
+        synchronized (this) {
+            sig = signatures.get(query);
+
+            if (sig == null) {
+                sig = computeSignature(computeCells(query.getRoute()));
+            }
+
+            for (int band = 0; band < BANDS; band++) {
+                List<Track> list = buckets.get(getBandKey(sig, band));
+                if (list != null) {
+                    candidates.addAll(list);
+                }
+            }
+
+            candidates.remove(query);
+        }
+
+        List<Match> result = new ArrayList<>();
+
+        if (candidates.isEmpty()) {
+            return result;
+        }
+
+        List<GeoPos> queryPoly = samplePoly(query.getRoute(), POLY_VERTICES);
+        List<GeoPos> querySamples = samplePoly(query.getRoute(), SAMPLE_POINTS);
+
+        for (Track cand : candidates) {
+            long[] candSig;
+            synchronized (this) {
+                candSig = signatures.get(cand);
+            }
+
+            double sim = estimateSimilarity(sig, candSig);
+
+            // check in both directions so that partial overlaps are rejected
+            List<GeoPos> candPoly = samplePoly(cand.getRoute(), POLY_VERTICES);
+            List<GeoPos> candSamples = samplePoly(cand.getRoute(), SAMPLE_POINTS);
+
+            double dist = Math.max(
+                    meanDistance(candSamples, queryPoly),
+                    meanDistance(querySamples, candPoly));
+
+            if (dist <= MAX_MEAN_DISTANCE) {
+                result.add(new Match(cand, sim, dist));
+            }
+        }
+
+        Collections.sort(result, new Comparator<Match>() {
+            @Override
+            public int compare(Match o1, Match o2) {
+                return Double.compare(o1.getDistance(), o2.getDistance());
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Reads signatures that were stored previously. They are used once the
+     * corresponding track is added.
+     *
+     * @param file the index file
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized void load(File file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = dis.readInt();
+            if (version != FILE_VERSION) {
+                log.info("Ignoring similarity index of version " + version);
+                return;
+            }
+
+            int count = dis.readInt();
+            for (int i = 0; i < count; i++) {
+                long key = dis.readLong();
+                long[] sig = new long[NUM_HASHES];
+                for (int j = 0; j < NUM_HASHES; j++) {
+                    sig[j] = dis.readLong();
+                }
+                stored.put(key, sig);
+            }
+        }
+
+        log.debug("Loaded " + stored.size() + " signatures from " + file);
+    }
+
+    /**
+     * Writes the signatures of all indexed tracks and the loaded signatures
+     * that have not been claimed by a track yet
+     *
+     * @param file the index file
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void save(File file) throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            dos.writeInt(FILE_VERSION);
+            dos.writeInt(signatures.size() + stored.size());
+
+            for (Map.Entry<Track, long[]> entry : signatures.entrySet()) {
+                writeSignature(dos, getKey(entry.getKey()), entry.getValue());
+            }
+
+            // e.g. if the window is closed before all tracks are loaded
+            for (Map.Entry<Long, long[]> entry : stored.entrySet()) {
+                writeSignature(dos, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static void writeSignature(DataOutputStream dos, long key, long[] sig) throws IOException {
+        dos.writeLong(key);
+        for (long val : sig) {
+            dos.writeLong(val);
+        }
+    }
+
+    /**
+     * Identifies a track across restarts through start time and size
+     */
+    private static long getKey(Track track) {
+        long start = (track.getStartTime() != null) ? track.getStartTime().getTime() : 0;
+        return mix(start) ^ track.getPoints().size();
+    }
+
+    /**
+     * @param route the route
+     * @return the sorted, unique geohash cells along the route
+     */
+    static long[] computeCells(List<GeoPosition> route) {
+        double cellSize = Math.min(GeoHash.getCellHeight(GEOHASH_BITS), GeoHash.getCellWidth(GEOHASH_BITS));
+
+        long[] cells = new long[route.size() * 2];
+        int count = 0;
+
+        GeoPosition prev = null;
+        for (GeoPosition pos : route) {
+            int steps = 1;
+
+            if (prev != null) {
+                double dLat = pos.getLatitude() - prev.getLatitude();
+                double dLon = pos.getLongitude() - prev.getLongitude();
+                steps = SpatialIndex.getSampleSteps(dLat, dLon, cellSize);
+            }
+
+            for (int s = 1; s <= steps; s++) {
+                double lat = pos.getLatitude();
+                double lon = pos.getLongitude();
+
+                if (prev != null && s < steps) {
+                    double f = s / (double) steps;
+                    lat = prev.getLatitude() + f * (lat - prev.getLatitude());
+                    lon = prev.getLongitude() + f * (lon - prev.getLongitude());
+                }
+
+                if (count == cells.length) {
+                    cells = Arrays.copyOf(cells, count * 2);
+                }
+                cells[count++] = GeoHash.encode(lat, lon, GEOHASH_BITS);
+            }
+
+            prev = pos;
+        }
+
+        Arrays.sort(cells, 0, count);
+
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || cells[unique - 1] != cells[i]) {
+                cells[unique++] = cells[i];
+            }
+        }
+
+        return Arrays.copyOf(cells, unique);
+    }
+
+    private static long[] computeSignature(long[] cells) {
+        long[] sig = new long[NUM_HASHES];
+        Arrays.fill(sig, Long.MAX_VALUE);
+
+        for (long cell : cells) {
+            for (int i = 0; i < NUM_HASHES; i++) {
+                long h = mix(cell ^ SEEDS[i]);
+                if (h < sig[i]) {
+                    sig[i] = h;
+                }
+            }
+        }
+
+        return sig;
+    }
+
+    private static long getBandKey(long[] sig, int band) {
+        long h = band;
+        for (int r = 0; r < ROWS; r++) {
+            h = h * 31 + sig[band * ROWS + r];
+        }
+        return mix(h);
+    }
+
+    private static double estimateSimilarity(long[] sig1, long[] sig2) {
+        int equal = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (sig1[i] == sig2[i]) {
+                equal++;
+            }
+        }
+        return equal / (double) NUM_HASHES;
+    }
+
+    private static List<GeoPos> samplePoly(List<GeoPosition> route, int max) {
+        int size = route.size();
+        int count = Math.min(size, max);
+        List<GeoPos> list = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            int idx = (count == 1) ? 0 : (int) ((long) i * (size - 1) / (count - 1));
+            GeoPosition pos = route.get(idx);
+            list.add(new GeoPos(pos.getLatitude(), pos.getLongitude()));
+        }
+
+        return list;
+    }
+
+    private static double meanDistance(List<GeoPos> samples, List<GeoPos> poly) {
+        if (poly.size() < 2) {
+            return Double.MAX_VALUE;
+        }
+
+        double sum = 0;
+        for (GeoPos pt : samples) {
+            sum += GeoPos.distanceToPolyMtrs(poly, pt);
+        }
+        return sum / samples.size();
+    }
+
+    /**
+     * The finalizer of the SplitMix64 generator
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
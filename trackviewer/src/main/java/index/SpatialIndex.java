@@ -0,0 +1,212 @@
+package index;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jxmapviewer.viewer.GeoPosition;
+
+import track.Track;
+
+/**
+ * An archive-wide spatial index that answers "which tracks pass through this
+ * area". Every track is registered with its bounding box and the coarse grid
+ * cells that it covers. Cells that are fully inside a query area give
+ * definite hits, only tracks in cells at the border of the area are checked
+ * segment by segment.
+ *
+ * @author Martin Steiger
+ */
+public class SpatialIndex {
+
+    /**
+     * The cell size in degrees (about 5km)
+     */
+    private static final double CELL_SIZE = 0.05;
+
+    /**
+     * Larger queries test the bounding boxes of all tracks instead
+     */
+    private static final int MAX_QUERY_CELLS = 4096;
+
+    private final List<Track> tracks = new ArrayList<>();
+    private final List<Rectangle2D> bounds = new ArrayList<>();
+    private final Map<Long, BitSet> cells = new HashMap<>();
+
+    /**
+     * @param track the track to add
+     */
+    public synchronized void add(Track track) {
+        Rectangle2D rc = track.getBounds();
+
+        if (rc == null) {
+            return;
+        }
+
+        int id = tracks.size();
+        tracks.add(track);
+        bounds.add(rc);
+
+        GeoPosition prev = null;
+        for (GeoPosition pos : track.getRoute()) {
+            if (prev == null) {
+                addCell(pos.getLatitude(), pos.getLongitude(), id);
+            } else {
+                double dLat = pos.getLatitude() - prev.getLatitude();
+                double dLon = pos.getLongitude() - prev.getLongitude();
+                int steps = getSampleSteps(dLat, dLon, CELL_SIZE);
+
+                for (int s = 1; s <= steps; s++) {
+                    double f = s / (double) steps;
+                    addCell(prev.getLatitude() + f * dLat, prev.getLongitude() + f * dLon, id);
+                }
+            }
+
+            prev = pos;
+        }
+    }
+
+    /**
+     * @return the number of indexed tracks
+     */
+    public synchronized int size() {
+        return tracks.size();
+    }
+
+    /**
+     * @param area the area in degrees (x = longitude, y = latitude)
+     * @return all tracks that pass through the area
+     */
+    public synchronized List<Track> findTracks(Rectangle2D area) {
+        BitSet definite = new BitSet();
+        BitSet candidates = new BitSet();
+
+        int col0 = toCell(area.getMinX());
+        int col1 = toCell(area.getMaxX());
+        int row0 = toCell(area.getMinY());
+        int row1 = toCell(area.getMaxY());
+
+        if ((long) (col1 - col0 + 1) * (row1 - row0 + 1) > MAX_QUERY_CELLS) {
+            for (int id = 0; id < tracks.size(); id++) {
+                Rectangle2D rc = bounds.get(id);
+
+                if (area.contains(rc)) {
+                    definite.set(id);
+                } else if (overlaps(area, rc)) {
+                    candidates.set(id);
+                }
+            }
+        } else {
+            for (int row = row0; row <= row1; row++) {
+                for (int col = col0; col <= col1; col++) {
+                    BitSet ids = cells.get(getKey(row, col));
+
+                    if (ids == null) {
+                        continue;
+                    }
+
+                    boolean inside = row > row0 && row < row1 && col > col0 && col < col1;
+
+                    if (inside) {
+                        definite.or(ids);
+                    } else {
+                        candidates.or(ids);
+                    }
+                }
+            }
+
+            candidates.andNot(definite);
+        }
+
+        List<Track> result = new ArrayList<>(definite.cardinality());
+
+        for (int id = definite.nextSetBit(0); id >= 0; id = definite.nextSetBit(id + 1)) {
+            result.add(tracks.get(id));
+        }
+
+        for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+            Track track = tracks.get(id);
+
+            if (intersects(track, area)) {
+                result.add(track);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Tests segment by segment if a track passes through an area
+     *
+     * @param track the track
+     * @param area the area in degrees (x = longitude, y = latitude)
+     * @return true if at least one segment intersects the area
+     */
+    public static boolean intersects(Track track, Rectangle2D area) {
+        Rectangle2D rc = track.getBounds();
+
+        if (rc == null || !overlaps(area, rc)) {
+            return false;
+        }
+
+        GeoPosition prev = null;
+        for (GeoPosition pos : track.getRoute()) {
+            if (prev == null) {
+                if (area.contains(pos.getLongitude(), pos.getLatitude())) {
+                    return true;
+                }
+            } else if (area.intersectsLine(prev.getLongitude(), prev.getLatitude(), pos.getLongitude(), pos.getLatitude())) {
+                return true;
+            }
+
+            prev = pos;
+        }
+
+        return false;
+    }
+
+    /**
+     * In contrast to {@link Rectangle2D#intersects} this also works for
+     * rectangles with zero width or height (e.g. straight routes)
+     */
+    private static boolean overlaps(Rectangle2D a, Rectangle2D b) {
+        return b.getMaxX() >= a.getMinX() && b.getMinX() <= a.getMaxX()
+                && b.getMaxY() >= a.getMinY() && b.getMinY() <= a.getMaxY();
+    }
+
+    private void addCell(double lat, double lon, int id) {
+        long key = getKey(toCell(lat), toCell(lon));
+        BitSet ids = cells.get(key);
+
+        if (ids == null) {
+            ids = new BitSet();
+            cells.put(key, ids);
+        }
+
+        ids.set(id);
+    }
+
+    /**
+     * Sample every half cell so that no cell is skipped. The cells have a
+     * fixed size in degrees, so the step does not depend on the latitude.
+     *
+     * @param dLat the latitude difference of the segment in degrees
+     * @param dLon the longitude difference of the segment in degrees
+     * @param cellSize the edge length of a cell in degrees
+     * @return the number of samples along the segment (at least 1)
+     */
+    static int getSampleSteps(double dLat, double dLon, double cellSize) {
+        return Math.max(1, (int) Math.ceil(Math.max(Math.abs(dLat), Math.abs(dLon)) * 2.0 / cellSize));
+    }
+
+    private static int toCell(double deg) {
+        return (int) Math.floor(deg / CELL_SIZE);
+    }
+
+    private static long getKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,272 @@
+package index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jxmapviewer.viewer.GeoPosition;
+
+import track.Track;
+import track.TrackPoint;
+
+import common.GeoUtils;
+
+/**
+ * A proximity index for the track points of the whole archive. It answers
+ * "which tracks passed within a certain distance of a position and when".
+ * The track points are sorted into a fine grid. Consecutive points of a
+ * track that fall into the same cell are stored as one run to keep the index
+ * small.
+ *
+ * @author Martin Steiger
+ */
+public class WaypointIndex {
+
+    /**
+     * The cell size in degrees (about 110m in latitude)
+     */
+    private static final double CELL_SIZE = 0.001;
+
+    /**
+     * Hits that are separated by a longer time in millisecs. are considered
+     * separate passages
+     */
+    private static final long PASSAGE_GAP = 2 * 60 * 1000;
+
+    private final List<Track> tracks = new ArrayList<>();
+    private final Map<Long, Bucket> cells = new HashMap<>();
+
+    /**
+     * A visit of a track close to a position
+     */
+    public static class Passage {
+
+        private final Track track;
+        private final int index;
+        private final double distance;
+        private final Date arrival;
+        private final Date departure;
+
+        Passage(Track track, int index, double distance, Date arrival, Date departure) {
+            this.track = track;
+            this.index = index;
+            this.distance = distance;
+            this.arrival = arrival;
+            this.departure = departure;
+        }
+
+        /**
+         * @return the track
+         */
+        public Track getTrack() {
+            return track;
+        }
+
+        /**
+         * @return the index of the closest track point
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the distance of the closest track point in meters
+         */
+        public double getDistance() {
+            return distance;
+        }
+
+        /**
+         * @return the (absolute) time of the first point in range
+         */
+        public Date getArrival() {
+            return arrival;
+        }
+
+        /**
+         * @return the (absolute) time of the last point in range
+         */
+        public Date getDeparture() {
+            return departure;
+        }
+    }
+
+    /**
+     * @param track the track to add
+     */
+    public synchronized void add(Track track) {
+        int id = tracks.size();
+        tracks.add(track);
+
+        List<GeoPosition> route = track.getRoute();
+
+        long runKey = 0;
+        int runStart = -1;
+
+        for (int i = 0; i < route.size(); i++) {
+            GeoPosition pos = route.get(i);
+            long key = getKey(toCell(pos.getLatitude()), toCell(pos.getLongitude()));
+
+            if (runStart >= 0 && key != runKey) {
+                getBucket(runKey).add(id, runStart, i - 1);
+                runStart = -1;
+            }
+
+            if (runStart < 0) {
+                runKey = key;
+                runStart = i;
+            }
+        }
+
+        if (runStart >= 0) {
+            getBucket(runKey).add(id, runStart, route.size() - 1);
+        }
+    }
+
+    /**
+     * @param pos the position (e.g. of a waypoint)
+     * @param radius the max. distance in meters
+     * @return all passages ordered by arrival time
+     */
+    public List<Passage> findPassages(GeoPosition pos, double radius) {
+        double lat = pos.getLatitude();
+        double lon = pos.getLongitude();
+
+        double radLat = Math.toDegrees(radius / GeoUtils.WGS84_MEAN_RADIUS);
+        double radLon = radLat / Math.max(0.01, Math.cos(Math.toRadians(lat)));
+
+        int row0 = toCell(lat - radLat);
+        int row1 = toCell(lat + radLat);
+        int col0 = toCell(lon - radLon);
+        int col1 = toCell(lon + radLon);
+
+        // collect all hits (track id, point index) in range
+        Map<Integer, List<Integer>> hits = new HashMap<>();
+
+        synchronized (this) {
+            for (int row = row0; row <= row1; row++) {
+                for (int col = col0; col <= col1; col++) {
+                    Bucket bucket = cells.get(getKey(row, col));
+
+                    if (bucket == null) {
+                        continue;
+                    }
+
+                    for (int i = 0; i < bucket.size; i += 3) {
+                        int id = bucket.items[i];
+                        List<GeoPosition> route = tracks.get(id).getRoute();
+
+                        for (int idx = bucket.items[i + 1]; idx <= bucket.items[i + 2]; idx++) {
+                            if (GeoUtils.computeDistance(pos, route.get(idx)) <= radius) {
+                                List<Integer> list = hits.get(id);
+                                if (list == null) {
+                                    list = new ArrayList<>();
+                                    hits.put(id, list);
+                                }
+                                list.add(idx);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Passage> result = new ArrayList<>();
+
+        for (Map.Entry<Integer, List<Integer>> entry : hits.entrySet()) {
+            Track track = tracks.get(entry.getKey());
+            List<Integer> indices = entry.getValue();
+            Collections.sort(indices);
+
+            int first = 0;
+            for (int i = 1; i <= indices.size(); i++) {
+                if (i == indices.size() || getTime(track, indices.get(i)) - getTime(track, indices.get(i - 1)) > PASSAGE_GAP) {
+                    result.add(createPassage(track, pos, indices.subList(first, i)));
+                    first = i;
+                }
+            }
+        }
+
+        Collections.sort(result, new Comparator<Passage>() {
+            @Override
+            public int compare(Passage o1, Passage o2) {
+                return o1.getArrival().compareTo(o2.getArrival());
+            }
+        });
+
+        return result;
+    }
+
+    private static Passage createPassage(Track track, GeoPosition pos, List<Integer> indices) {
+        List<GeoPosition> route = track.getRoute();
+
+        int bestIdx = indices.get(0);
+        double bestDist = Double.MAX_VALUE;
+
+        for (Integer idx : indices) {
+            double dist = GeoUtils.computeDistance(pos, route.get(idx));
+            if (dist < bestDist) {
+                bestDist = dist;
+                bestIdx = idx;
+            }
+        }
+
+        Date arrival = new Date(getTime(track, indices.get(0)));
+        Date departure = new Date(getTime(track, indices.get(indices.size() - 1)));
+
+        return new Passage(track, bestIdx, bestDist, arrival, departure);
+    }
+
+    /**
+     * @return the absolute time of a track point in millisecs.
+     */
+    private static long getTime(Track track, int index) {
+        TrackPoint pt = track.getPoints().get(index);
+        long start = (track.getStartTime() != null) ? track.getStartTime().getTime() : 0;
+
+        // track point times are relative to the start time
+        return start + pt.getTime().getTime();
+    }
+
+    private Bucket getBucket(long key) {
+        Bucket bucket = cells.get(key);
+
+        if (bucket == null) {
+            bucket = new Bucket();
+            cells.put(key, bucket);
+        }
+
+        return bucket;
+    }
+
+    private static int toCell(double deg) {
+        return (int) Math.floor(deg / CELL_SIZE);
+    }
+
+    private static long getKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Stores runs as triples of (track id, first index, last index)
+     */
+    private static class Bucket {
+
+        private int[] items = new int[6];
+        private int size;
+
+        void add(int id, int from, int to) {
+            if (size + 3 > items.length) {
+                items = Arrays.copyOf(items, items.length * 2);
+            }
+            items[size++] = id;
+            items[size++] = from;
+            items[size++] = to;
+        }
+    }
+}
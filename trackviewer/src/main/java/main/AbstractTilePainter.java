@@ -0,0 +1,302 @@
+package main;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jxmapviewer.JXMapViewer;
+import org.jxmapviewer.painter.Painter;
+import org.jxmapviewer.viewer.TileFactory;
+
+/**
+ * Paints an overlay from tiles that are aligned with the tiles of the map.
+ * Missing tiles are rendered in the background and kept in an LRU cache, so
+ * panning only composites images.
+ *
+ * @author Martin Steiger
+ */
+public abstract class AbstractTilePainter implements Painter<JXMapViewer> {
+
+    private static final Log log = LogFactory.getLog(AbstractTilePainter.class);
+
+    /**
+     * The max. number of cached tiles (about 48MB)
+     */
+    private static final int MAX_TILES = 192;
+
+    /**
+     * Shared markers for tiles without any content
+     */
+    private static final Tile EMPTY_TILE = new Tile(null, true);
+    private static final Tile EMPTY_PREVIEW_TILE = new Tile(null, false);
+
+    private final ExecutorService executor;
+
+    private final Map<TileKey, Tile> cache = new LinkedHashMap<TileKey, Tile>(16, 0.75f, true) {
+        private static final long serialVersionUID = -4164436379315618434L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TileKey, Tile> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+
+    /**
+     * The tiles that are being rendered and a stamp that is incremented when
+     * the area of the tile is invalidated while it is rendered
+     */
+    private final Map<TileKey, Integer> pending = new HashMap<>();
+
+    private volatile int currentZoom;
+    private volatile boolean disposed;
+    private volatile TileFactory tileFactory;
+    private volatile boolean highQuality = true;
+
+    /**
+     * Is incremented with every full invalidation - tiles that were rendered
+     * before are not cached
+     */
+    private int generation;
+
+    /**
+     * @param executor the executor that renders the tiles
+     */
+    protected AbstractTilePainter(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Stops rendering tiles that have not been started yet
+     */
+    public void dispose() {
+        disposed = true;
+    }
+
+    /**
+     * Renders a tile. This is called from a background thread.
+     *
+     * @param tileFactory the tile factory that defines the projection
+     * @param zoom the zoom level
+     * @param tileRect the tile in world bitmap pixels
+     * @param highQuality false if a quick preview is sufficient
+     * @return the image or <code>null</code> if the tile is empty
+     */
+    protected abstract BufferedImage renderTile(TileFactory tileFactory, int zoom, Rectangle tileRect, boolean highQuality);
+
+    /**
+     * While the map is moved, missing tiles are rendered as quick previews.
+     * Switching back to high quality re-renders the previews once.
+     *
+     * @param highQuality true if tiles should be rendered in high quality
+     */
+    public void setHighQuality(boolean highQuality) {
+        this.highQuality = highQuality;
+    }
+
+    /**
+     * Removes all cached tiles
+     */
+    public void invalidate() {
+        synchronized (cache) {
+            generation++;
+            cache.clear();
+        }
+    }
+
+    /**
+     * Removes all cached tiles that overlap an area
+     *
+     * @param minX the min. normalized x coordinate [0..1]
+     * @param minY the min. normalized y coordinate [0..1]
+     * @param maxX the max. normalized x coordinate [0..1]
+     * @param maxY the max. normalized y coordinate [0..1]
+     */
+    protected void invalidate(double minX, double minY, double maxX, double maxY) {
+        TileFactory tf = tileFactory;
+
+        if (tf == null) {
+            return;
+        }
+
+        synchronized (cache) {
+            Iterator<TileKey> it = cache.keySet().iterator();
+            while (it.hasNext()) {
+                if (overlaps(tf, it.next(), minX, minY, maxX, maxY)) {
+                    it.remove();
+                }
+            }
+
+            // tiles in the area that are being rendered are outdated, the others are not
+            for (Map.Entry<TileKey, Integer> entry : pending.entrySet()) {
+                if (overlaps(tf, entry.getKey(), minX, minY, maxX, maxY)) {
+                    entry.setValue(entry.getValue() + 1);
+                }
+            }
+        }
+    }
+
+    private static boolean overlaps(TileFactory tf, TileKey key, double minX, double minY, double maxX, double maxY) {
+        int tileSize = tf.getTileSize(key.zoom);
+        double width = tf.getMapSize(key.zoom).getWidth() * tileSize;
+
+        return key.col * tileSize <= maxX * width && (key.col + 1) * tileSize >= minX * width
+                && key.row * tileSize <= maxY * width && (key.row + 1) * tileSize >= minY * width;
+    }
+
+    @Override
+    public void paint(Graphics2D g, JXMapViewer map, int w, int h) {
+        TileFactory tf = map.getTileFactory();
+        int zoom = map.getZoom();
+        int tileSize = tf.getTileSize(zoom);
+        boolean hq = highQuality;
+
+        currentZoom = zoom;
+        tileFactory = tf;
+
+        Rectangle rect = map.getViewportBounds();
+
+        int col0 = Math.floorDiv(rect.x, tileSize);
+        int col1 = Math.floorDiv(rect.x + rect.width, tileSize);
+        int row0 = Math.floorDiv(rect.y, tileSize);
+        int row1 = Math.floorDiv(rect.y + rect.height, tileSize);
+
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                TileKey key = new TileKey(zoom, col, row);
+                Tile tile;
+
+                synchronized (cache) {
+                    tile = cache.get(key);
+
+                    // previews remain visible until the high quality tile is available
+                    boolean outdated = tile == null || (hq && !tile.highQuality);
+
+                    if (outdated && !pending.containsKey(key)) {
+                        pending.put(key, 0);
+                        executor.execute(new TileRenderer(key, tileSize, tf, map, generation, hq));
+                    }
+                }
+
+                if (tile != null && tile.image != null) {
+                    g.drawImage(tile.image, col * tileSize - rect.x, row * tileSize - rect.y, null);
+                }
+            }
+        }
+    }
+
+    private class TileRenderer implements Runnable {
+
+        private final TileKey key;
+        private final int tileSize;
+        private final TileFactory tileFactory;
+        private final JXMapViewer map;
+        private final int gen;
+        private final boolean hq;
+
+        TileRenderer(TileKey key, int tileSize, TileFactory tileFactory, JXMapViewer map, int gen, boolean hq) {
+            this.key = key;
+            this.tileSize = tileSize;
+            this.tileFactory = tileFactory;
+            this.map = map;
+            this.gen = gen;
+            this.hq = hq;
+        }
+
+        @Override
+        public void run() {
+            // skip tiles that are no longer needed
+            if (disposed || key.zoom != currentZoom) {
+                synchronized (cache) {
+                    pending.remove(key);
+                }
+                return;
+            }
+
+            Tile tile = null;
+
+            try {
+                Rectangle tileRect = new Rectangle(key.col * tileSize, key.row * tileSize, tileSize, tileSize);
+                BufferedImage image = renderTile(tileFactory, key.zoom, tileRect, hq);
+
+                if (image == null) {
+                    tile = hq ? EMPTY_TILE : EMPTY_PREVIEW_TILE;
+                } else {
+                    tile = new Tile(image, hq);
+                }
+            } catch (RuntimeException e) {
+                log.error("Could not render tile", e);
+            }
+
+            synchronized (cache) {
+                Integer stamp = pending.remove(key);
+
+                if (tile != null && gen == generation && stamp != null && stamp == 0) {
+                    cache.put(key, tile);
+                }
+            }
+
+            if (tile != null) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!disposed && map.getZoom() == key.zoom) {
+                            Rectangle rect = map.getViewportBounds();
+                            map.repaint(key.col * tileSize - rect.x, key.row * tileSize - rect.y, tileSize, tileSize);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    private static final class Tile {
+
+        /**
+         * The image or <code>null</code> if the tile is empty
+         */
+        private final BufferedImage image;
+        private final boolean highQuality;
+
+        Tile(BufferedImage image, boolean highQuality) {
+            this.image = image;
+            this.highQuality = highQuality;
+        }
+    }
+
+    private static final class TileKey {
+
+        private final int zoom;
+        private final int col;
+        private final int row;
+
+        TileKey(int zoom, int col, int row) {
+            this.zoom = zoom;
+            this.col = col;
+            this.row = row;
+        }
+
+        @Override
+        public int hashCode() {
+            return (zoom * 31 + col) * 31 + row;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+
+            TileKey other = (TileKey) obj;
+            return zoom == other.zoom && col == other.col && row == other.row;
+        }
+    }
+}
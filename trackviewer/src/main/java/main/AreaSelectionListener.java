@@ -0,0 +1,17 @@
+package main;
+
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Fired whenever an area on the map has been selected
+ *
+ * @author Martin Steiger
+ */
+public interface AreaSelectionListener {
+
+    /**
+     * @param area the area in degrees (x = longitude, y = latitude) or
+     * <code>null</code> if the selection has been cleared
+     */
+    public void areaSelected(Rectangle2D area);
+}
@@ -104,6 +104,7 @@ public class GapInserter {
             if (totalDistGap > 0 && totalTimeGap > 0) {
                 System.out.println("Inserting gap of " + (int)totalDistGap + "m at " + otherStartIdx);
                 insertGap(track2.getPoints(), otherStartIdx, totalDistGap, totalTimeGap);
+                track2.pointsChanged();
             }
         }
 
@@ -0,0 +1,356 @@
+package main;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.jxmapviewer.viewer.GeoPosition;
+import org.jxmapviewer.viewer.TileFactory;
+
+import main.map.ProjectedRoute;
+import track.Track;
+
+/**
+ * Paints the density of all tracks of the archive. For every tile the
+ * routes are accumulated into a density buffer (every track counts once per
+ * pixel), which is then color-mapped.
+ *
+ * @author Martin Steiger
+ */
+public class HeatmapPainter extends AbstractTilePainter {
+
+    /**
+     * Tiles with more routes are split into parallel tasks
+     */
+    private static final int ROUTES_PER_TASK = 64;
+
+    /**
+     * The number of passes that gives the brightest color
+     */
+    private static final int SATURATION = 50;
+
+    private static final int[] PALETTE = createPalette(256);
+
+    private final List<Route> routes = new ArrayList<>();
+
+    /**
+     * A route in normalized Web-Mercator coordinates, stored as offsets
+     * to its bounding box to keep the memory footprint small
+     */
+    private static class Route {
+
+        private final double minX;
+        private final double minY;
+        private final double maxX;
+        private final double maxY;
+        private final float[] dx;
+        private final float[] dy;
+
+        Route(List<GeoPosition> route) {
+            int count = route.size();
+
+            double[] xs = new double[count];
+            double[] ys = new double[count];
+
+            double x0 = 1;
+            double y0 = 1;
+            double x1 = 0;
+            double y1 = 0;
+
+            for (int i = 0; i < count; i++) {
+                GeoPosition pos = route.get(i);
+                xs[i] = ProjectedRoute.toNormalizedX(pos.getLongitude());
+                ys[i] = ProjectedRoute.toNormalizedY(pos.getLatitude());
+
+                x0 = Math.min(x0, xs[i]);
+                y0 = Math.min(y0, ys[i]);
+                x1 = Math.max(x1, xs[i]);
+                y1 = Math.max(y1, ys[i]);
+            }
+
+            minX = x0;
+            minY = y0;
+            maxX = x1;
+            maxY = y1;
+
+            dx = new float[count];
+            dy = new float[count];
+
+            for (int i = 0; i < count; i++) {
+                dx[i] = (float) (xs[i] - minX);
+                dy[i] = (float) (ys[i] - minY);
+            }
+        }
+    }
+
+    /**
+     * @param executor the executor that renders the tiles
+     */
+    public HeatmapPainter(ExecutorService executor) {
+        super(executor);
+    }
+
+    /**
+     * Adds a track and invalidates the tiles it covers. Can be called from
+     * any thread.
+     *
+     * @param track the track to add
+     */
+    public void addTrack(Track track) {
+        if (track.getRoute().size() < 2) {
+            return;
+        }
+
+        Route route = new Route(track.getRoute());
+
+        synchronized (routes) {
+            routes.add(route);
+        }
+
+        invalidate(route.minX, route.minY, route.maxX, route.maxY);
+    }
+
+    @Override
+    protected BufferedImage renderTile(TileFactory tileFactory, int zoom, Rectangle tileRect, boolean highQuality) {
+        double width = ProjectedRoute.getMapWidth(tileFactory, zoom);
+
+        // a margin of one pixel
+        double minX = (tileRect.x - 1) / width;
+        double minY = (tileRect.y - 1) / width;
+        double maxX = (tileRect.x + tileRect.width + 1) / width;
+        double maxY = (tileRect.y + tileRect.height + 1) / width;
+
+        List<Route> candidates = new ArrayList<>();
+
+        synchronized (routes) {
+            for (Route route : routes) {
+                if (route.maxX >= minX && route.minX <= maxX && route.maxY >= minY && route.minY <= maxY) {
+                    candidates.add(route);
+                }
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        DensityTask task = new DensityTask(candidates, 0, candidates.size(), tileRect, width);
+        int[] density = ForkJoinPool.commonPool().invoke(task);
+
+        return colorize(density, tileRect.width, tileRect.height);
+    }
+
+    private static BufferedImage colorize(int[] density, int w, int h) {
+        int[] argb = new int[density.length];
+        double scale = (PALETTE.length - 1) / Math.log1p(SATURATION);
+        boolean empty = true;
+
+        for (int i = 0; i < density.length; i++) {
+            if (density[i] > 0) {
+                int idx = (int) Math.min(PALETTE.length - 1, Math.log1p(density[i]) * scale);
+                argb[i] = PALETTE[idx];
+                empty = false;
+            }
+        }
+
+        if (empty) {
+            return null;
+        }
+
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        img.setRGB(0, 0, w, h, argb, 0, w);
+        return img;
+    }
+
+    /**
+     * Blue (few) over red to yellow (many passes)
+     */
+    private static int[] createPalette(int size) {
+        int[] palette = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            float t = i / (float) (size - 1);
+            float hue = 0.66f - 0.5f * t;
+            int rgb = Color.HSBtoRGB(hue, 1f, 0.6f + 0.4f * t);
+            int alpha = (int) (120 + 135 * t);
+            palette[i] = (alpha << 24) | (rgb & 0xFFFFFF);
+        }
+
+        return palette;
+    }
+
+    /**
+     * Accumulates a range of routes into a density buffer - large ranges are
+     * split and the results merged
+     */
+    private static class DensityTask extends RecursiveTask<int[]> {
+
+        private static final long serialVersionUID = 2735087532286573163L;
+
+        private final List<Route> routes;
+        private final int from;
+        private final int to;
+        private final Rectangle tileRect;
+        private final double width;
+
+        DensityTask(List<Route> routes, int from, int to, Rectangle tileRect, double width) {
+            this.routes = routes;
+            this.from = from;
+            this.to = to;
+            this.tileRect = tileRect;
+            this.width = width;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from > ROUTES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                DensityTask left = new DensityTask(routes, from, mid, tileRect, width);
+                DensityTask right = new DensityTask(routes, mid, to, tileRect, width);
+
+                left.fork();
+                int[] result = right.compute();
+                int[] other = left.join();
+
+                for (int i = 0; i < result.length; i++) {
+                    result[i] += other[i];
+                }
+
+                return result;
+            }
+
+            int w = tileRect.width;
+            int h = tileRect.height;
+
+            int[] density = new int[w * h];
+
+            // the route that last touched a pixel - every route counts once
+            int[] stamp = new int[w * h];
+
+            for (int r = from; r < to; r++) {
+                rasterize(routes.get(r), r + 1, density, stamp);
+            }
+
+            return density;
+        }
+
+        private void rasterize(Route route, int id, int[] density, int[] stamp) {
+            int w = tileRect.width;
+            int h = tileRect.height;
+
+            double ox = route.minX * width - tileRect.x;
+            double oy = route.minY * width - tileRect.y;
+
+            double x0 = ox + route.dx[0] * width;
+            double y0 = oy + route.dy[0] * width;
+
+            // the parameter range [t0, t1] of the clipped segment
+            double[] range = new double[2];
+
+            for (int i = 1; i < route.dx.length; i++) {
+                double x1 = ox + route.dx[i] * width;
+                double y1 = oy + route.dy[i] * width;
+
+                // only the part of the segment inside the tile is drawn
+                if (clip(x0, y0, x1, y1, w, h, range)) {
+                    double ddx = x1 - x0;
+                    double ddy = y1 - y0;
+
+                    int cx0 = toPixel(x0 + range[0] * ddx, w);
+                    int cy0 = toPixel(y0 + range[0] * ddy, h);
+                    int cx1 = toPixel(x0 + range[1] * ddx, w);
+                    int cy1 = toPixel(y0 + range[1] * ddy, h);
+
+                    drawLine(cx0, cy0, cx1, cy1, w, id, density, stamp);
+                }
+
+                x0 = x1;
+                y0 = y1;
+            }
+        }
+
+        /**
+         * Liang-Barsky line clipping against [0..w]x[0..h]
+         *
+         * @param range receives the parameter range of the visible part
+         * @return true if a part of the segment is inside
+         */
+        private static boolean clip(double x0, double y0, double x1, double y1, int w, int h, double[] range) {
+            double dx = x1 - x0;
+            double dy = y1 - y0;
+
+            range[0] = 0;
+            range[1] = 1;
+
+            return clipEdge(-dx, x0, range)
+                    && clipEdge(dx, w - x0, range)
+                    && clipEdge(-dy, y0, range)
+                    && clipEdge(dy, h - y0, range);
+        }
+
+        private static boolean clipEdge(double p, double q, double[] range) {
+            if (p == 0) {
+                return q >= 0;          // parallel to the edge
+            }
+
+            double t = q / p;
+
+            if (p < 0) {
+                if (t > range[1]) {
+                    return false;
+                }
+                range[0] = Math.max(range[0], t);
+            } else {
+                if (t < range[0]) {
+                    return false;
+                }
+                range[1] = Math.min(range[1], t);
+            }
+
+            return true;
+        }
+
+        private static int toPixel(double val, int size) {
+            return Math.max(0, Math.min(size - 1, (int) Math.floor(val)));
+        }
+
+        /**
+         * Bresenham's line algorithm
+         */
+        private static void drawLine(int x0, int y0, int x1, int y1, int w, int id, int[] density, int[] stamp) {
+            int dx = Math.abs(x1 - x0);
+            int dy = -Math.abs(y1 - y0);
+            int sx = (x0 < x1) ? 1 : -1;
+            int sy = (y0 < y1) ? 1 : -1;
+            int err = dx + dy;
+
+            // the end points are inside the tile, so every pixel is
+            while (true) {
+                int idx = y0 * w + x0;
+                if (stamp[idx] != id) {
+                    stamp[idx] = id;
+                    density[idx]++;
+                }
+
+                if (x0 == x1 && y0 == y1) {
+                    break;
+                }
+
+                int e2 = 2 * err;
+                if (e2 >= dy) {
+                    err += dy;
+                    x0 += sx;
+                }
+                if (e2 <= dx) {
+                    err += dx;
+                    y0 += sy;
+                }
+            }
+        }
+    }
+}
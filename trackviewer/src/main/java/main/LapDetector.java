@@ -0,0 +1,275 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jxmapviewer.viewer.GeoPosition;
+
+import track.Track;
+import track.TrackPoint;
+
+import common.GeoUtils;
+
+/**
+ * Detects self-intersections and laps of a track. Segments are projected to a
+ * local plane (in meters) and sorted into a uniform grid, so that only
+ * segments that share a grid cell are tested against each other.
+ *
+ * @author Martin Steiger
+ */
+public class LapDetector {
+
+    /**
+     * The edge length of a grid cell in meters
+     */
+    private static final double CELL_SIZE = 50;
+
+    /**
+     * The radius around the lap start that counts as passing the start
+     */
+    private static final double START_RADIUS = 25;
+
+    /**
+     * A crossing must be within this distance after the lap start to count as
+     * crossing the start line
+     */
+    private static final double GATE_DISTANCE = 50;
+
+    /**
+     * The minimum length of a lap in meters
+     */
+    private static final double MIN_LAP_DISTANCE = 200;
+
+    /**
+     * Finds all loops, i.e. parts of the track that end where the track
+     * crosses itself.
+     *
+     * @param track the track
+     * @return the loops as ranges of point indices (ordered by end index)
+     */
+    public static List<Range<Integer>> findCrossings(Track track) {
+        List<GeoPosition> route = track.getRoute();
+        int count = route.size();
+
+        List<Range<Integer>> result = new ArrayList<>();
+
+        if (count < 4) {
+            return result;
+        }
+
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        GeoUtils.projectLocal(route, xs, ys);
+
+        Map<Long, int[]> cells = new HashMap<>();
+
+        // the segment index that has been tested last - avoids testing
+        // pairs twice if they share more than one cell
+        int[] stamp = new int[count];
+        Arrays.fill(stamp, -1);
+
+        for (int j = 0; j < count - 1; j++) {
+            for (long key : getCells(xs[j], ys[j], xs[j + 1], ys[j + 1])) {
+                int[] segs = cells.get(key);
+
+                if (segs != null) {
+                    // segs[0] contains the number of entries
+                    for (int k = 1; k <= segs[0]; k++) {
+                        int i = segs[k];
+
+                        // skip adjacent segments, they always touch
+                        if (i >= j - 1 || stamp[i] == j) {
+                            continue;
+                        }
+
+                        stamp[i] = j;
+
+                        if (intersect(xs, ys, i, j)) {
+                            result.add(new Range<>(i + 1, j));
+                        }
+                    }
+                }
+
+                cells.put(key, append(segs, j));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Splits a track into laps. A lap ends where the track passes its start
+     * again or crosses itself close to the start of the lap.
+     *
+     * @param track the track
+     * @return the laps as ranges of point indices that cover the full track
+     */
+    public static List<Range<Integer>> findLaps(Track track) {
+        List<TrackPoint> points = track.getPoints();
+        List<Range<Integer>> laps = new ArrayList<>();
+
+        if (points.isEmpty()) {
+            return laps;
+        }
+
+        List<Range<Integer>> crossings = findCrossings(track);
+
+        int lapStart = 0;
+
+        while (lapStart < points.size() - 1) {
+            int next = findStartCrossing(points, crossings, lapStart);
+            int pass = findStartPass(points, lapStart);
+
+            if (next < 0 || (pass >= 0 && pass < next)) {
+                next = pass;
+            }
+
+            if (next < 0) {
+                break;
+            }
+
+            laps.add(new Range<>(lapStart, next));
+            lapStart = next;
+        }
+
+        if (lapStart < points.size() - 1 || laps.isEmpty()) {
+            laps.add(new Range<>(lapStart, points.size() - 1));
+        }
+
+        return laps;
+    }
+
+    private static int findStartCrossing(List<TrackPoint> points, List<Range<Integer>> crossings, int lapStart) {
+        double startDist = points.get(lapStart).getDistance();
+
+        for (Range<Integer> loop : crossings) {
+            int i = loop.getStart() - 1;        // the first crossing segment
+            int j = loop.getEnd();              // the second crossing segment
+
+            if (i < lapStart || j <= lapStart) {
+                continue;
+            }
+
+            if (points.get(i).getDistance() - startDist > GATE_DISTANCE) {
+                continue;
+            }
+
+            if (points.get(j).getDistance() - startDist >= MIN_LAP_DISTANCE) {
+                return j + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int findStartPass(List<TrackPoint> points, int lapStart) {
+        GeoPosition start = points.get(lapStart).getPos();
+        double startDist = points.get(lapStart).getDistance();
+
+        boolean armed = false;
+        int best = -1;
+        double bestDist = Double.MAX_VALUE;
+
+        for (int k = lapStart + 1; k < points.size(); k++) {
+            double dist = GeoUtils.computeDistance(start, points.get(k).getPos());
+
+            if (!armed) {
+                // the track has to leave the start area first
+                armed = dist > 2 * START_RADIUS
+                        && points.get(k).getDistance() - startDist >= MIN_LAP_DISTANCE * 0.5;
+                continue;
+            }
+
+            if (dist <= START_RADIUS) {
+                if (dist < bestDist && points.get(k).getDistance() - startDist >= MIN_LAP_DISTANCE) {
+                    best = k;
+                    bestDist = dist;
+                }
+            } else if (best >= 0) {
+                break;        // the closest approach has been passed
+            }
+        }
+
+        return best;
+    }
+
+    private static boolean intersect(double[] xs, double[] ys, int i, int j) {
+        double d1 = cross(xs[j], ys[j], xs[j + 1], ys[j + 1], xs[i], ys[i]);
+        double d2 = cross(xs[j], ys[j], xs[j + 1], ys[j + 1], xs[i + 1], ys[i + 1]);
+        double d3 = cross(xs[i], ys[i], xs[i + 1], ys[i + 1], xs[j], ys[j]);
+        double d4 = cross(xs[i], ys[i], xs[i + 1], ys[i + 1], xs[j + 1], ys[j + 1]);
+
+        // proper intersections only - touching does not count
+        return ((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0))
+                && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0));
+    }
+
+    private static double cross(double ax, double ay, double bx, double by, double px, double py) {
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+
+    /**
+     * Walks the grid cells along the segment (Amanatides &amp; Woo), so
+     * that long segments (e.g. recording gaps) do not fill their entire
+     * bounding box
+     *
+     * @return the keys of all cells that the segment passes through
+     */
+    private static long[] getCells(double x0, double y0, double x1, double y1) {
+        double cx = x0 / CELL_SIZE;
+        double cy = y0 / CELL_SIZE;
+        double dx = x1 / CELL_SIZE - cx;
+        double dy = y1 / CELL_SIZE - cy;
+
+        int col = (int) Math.floor(cx);
+        int row = (int) Math.floor(cy);
+        int endCol = (int) Math.floor(cx + dx);
+        int endRow = (int) Math.floor(cy + dy);
+
+        int stepX = (dx > 0) ? 1 : -1;
+        int stepY = (dy > 0) ? 1 : -1;
+
+        // the parameter t in [0..1] at which the next column/row boundary is crossed
+        double tDeltaX = (dx != 0) ? Math.abs(1 / dx) : Double.POSITIVE_INFINITY;
+        double tDeltaY = (dy != 0) ? Math.abs(1 / dy) : Double.POSITIVE_INFINITY;
+        double tMaxX = (dx != 0) ? ((dx > 0 ? col + 1 : col) - cx) / dx : Double.POSITIVE_INFINITY;
+        double tMaxY = (dy != 0) ? ((dy > 0 ? row + 1 : row) - cy) / dy : Double.POSITIVE_INFINITY;
+
+        long[] keys = new long[Math.abs(endCol - col) + Math.abs(endRow - row) + 1];
+        int size = 0;
+
+        keys[size++] = getKey(row, col);
+
+        while (col != endCol || row != endRow) {
+            if (row == endRow || (col != endCol && tMaxX < tMaxY)) {
+                col += stepX;
+                tMaxX += tDeltaX;
+            } else {
+                row += stepY;
+                tMaxY += tDeltaY;
+            }
+
+            keys[size++] = getKey(row, col);
+        }
+
+        return keys;
+    }
+
+    private static long getKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    private static int[] append(int[] segs, int seg) {
+        if (segs == null) {
+            segs = new int[4];
+        } else if (segs[0] + 1 == segs.length) {
+            segs = Arrays.copyOf(segs, segs.length * 2);
+        }
+
+        segs[++segs[0]] = seg;
+        return segs;
+    }
+}
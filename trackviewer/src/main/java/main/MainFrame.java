@@ -4,13 +4,25 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.geom.Rectangle2D;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
+import java.text.DateFormat;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.AbstractAction;
 import javax.swing.ButtonGroup;
@@ -19,18 +31,28 @@ import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
 import javax.swing.JRadioButtonMenuItem;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTable;
 import javax.swing.KeyStroke;
 import javax.swing.ListSelectionModel;
+import javax.swing.RowFilter;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.TableModel;
 import javax.swing.table.TableRowSorter;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import common.Profiler;
+import index.RouteSimilarityIndex;
+import index.SpatialIndex;
+import index.WaypointIndex;
 import main.chart.StatusBar;
 import main.table.DistanceFormat;
 import main.table.FormatRenderer;
@@ -39,6 +61,7 @@ import main.table.SpeedFormat;
 import main.table.TimeFormat;
 import main.table.TrackTableModel;
 import track.Track;
+import track.Waypoint;
 import webservice.TrackElevationFixer;
 
 /**
@@ -49,10 +72,32 @@ import webservice.TrackElevationFixer;
 public class MainFrame extends JFrame {
 
     private static final long serialVersionUID = -9215006987029836062L;
+    private static final Log log = LogFactory.getLog(MainFrame.class);
+
     private MapViewer viewer;
     private JTable table;
     private StatusBar statusBar;
     private TrackChart trackChart;
+    private TableRowSorter<TableModel> sorter;
+    private List<Track> shownTracks = new ArrayList<>();
+
+    /**
+     * Prepares the views of the selected tracks in the background
+     */
+    private SwingWorker<MapViewer.PreparedRoutes, Void> selectionWorker;
+
+    /**
+     * The track and point index of a marker that is set once the selection
+     * has been prepared or <code>null</code>
+     */
+    private int[] pendingMarker;
+    private final RouteSimilarityIndex similarityIndex = new RouteSimilarityIndex();
+    private final SpatialIndex spatialIndex = new SpatialIndex();
+    private final WaypointIndex waypointIndex = new WaypointIndex();
+    private final PlaybackController playback = new PlaybackController();
+
+    private Rectangle2D filterArea;
+    private final Set<Track> filterMatches = Collections.newSetFromMap(new IdentityHashMap<Track, Boolean>());
 
     /**
      * Constructs a new instance
@@ -71,40 +116,110 @@ public class MainFrame extends JFrame {
 
         final List<Track> tracks = new CopyOnWriteArrayList<>();
 
+        final File indexFile = new File(folder, ".similarity-index");
+        if (indexFile.exists()) {
+            try {
+                similarityIndex.load(indexFile);
+            } catch (IOException e) {
+                log.warn("Could not read similarity index", e);
+            }
+        }
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                saveSimilarityIndex(indexFile);
+            }
+        });
+
         viewer = new MapViewer();
 
         table = createTable(tracks);
 
         TrackLoader.readTracks(folder, new TrackLoadListener() {
             @Override
-            public void trackLoaded(Track track) {
+            public void trackLoaded(final Track track) {
                 tracks.add(track);
+                similarityIndex.add(track);
+                spatialIndex.add(track);
+                waypointIndex.add(track);
+                viewer.addHeatmapTrack(track);
 
                 SwingUtilities.invokeLater(new Runnable() {
                     @Override
                     public void run() {
+                        if (filterArea != null && SpatialIndex.intersects(track, filterArea)) {
+                            filterMatches.add(track);
+                        }
                         ((AbstractTableModel) table.getModel()).fireTableDataChanged();
                     }
                 });
             }
+
+            @Override
+            public void loadingFinished() {
+                // all signatures are known now - write them in case the application is not closed properly
+                saveSimilarityIndex(indexFile);
+            }
         });
 
         // put in a scrollpane to add scroll bars
         JScrollPane tablePane = new JScrollPane(table);
         table.setFillsViewportHeight(true);
 
+        viewer.addSelectionListener(new SelectionListener() {
+            @Override
+            public void selected(int series, int index) {
+                selectTrackPoint(series, index);
+            }
+        });
+
+        viewer.addAreaSelectionListener(new AreaSelectionListener() {
+            @Override
+            public void areaSelected(Rectangle2D area) {
+                filterByArea(area);
+            }
+        });
+
         trackChart = new TrackChart();
 
-        trackChart.addSelectionListener(new SelectionListener() {
+        trackChart.addSelectionBatchListener(new SelectionBatchListener() {
             @Override
-            public void selected(int series, int index) {
-                viewer.setMarker(series, index);
+            public void selected(Map<Integer, Integer> indices) {
+                viewer.setMarkers(indices);
+            }
+        });
+
+        trackChart.addPropertyChangeListener("visibleRanges", new PropertyChangeListener() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                viewer.setHighlights((List<Range<Integer>>) evt.getNewValue());
             }
         });
 
         statusBar = new StatusBar();
         add(statusBar, BorderLayout.SOUTH);
 
+        playback.addPlaybackListener(new PlaybackListener() {
+            @Override
+            public void timeChanged(long time) {
+                viewer.setPlaybackTime(time);
+                trackChart.setPlaybackTime(time);
+
+                if (shownTracks.size() > 1) {
+                    statusBar.setStatus(getGapSummary(time));
+                }
+            }
+        });
+
+        viewer.addPropertyChangeListener("frameStats", new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                statusBar.setExtra((String) evt.getNewValue());
+            }
+        });
+
         //Create the main split pane
         JSplitPane chartSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, viewer, trackChart);
         chartSplitPane.setDividerLocation(550);
@@ -147,15 +262,18 @@ public class MainFrame extends JFrame {
         FormatRenderer timeRenderer = new FormatRenderer(new TimeFormat());
         FormatRenderer speedRenderer = new FormatRenderer(new SpeedFormat());
         FormatRenderer altiRenderer = new FormatRenderer(new DecimalFormat("# m"));
+        FormatRenderer sensorRenderer = new FormatRenderer(new DecimalFormat("#"));
 
         table.getColumn("date").setCellRenderer(dateRenderer);
         table.getColumn("distance").setCellRenderer(distanceRenderer);
         table.getColumn("time").setCellRenderer(timeRenderer);
         table.getColumn("speed").setCellRenderer(speedRenderer);
         table.getColumn("altitude").setCellRenderer(altiRenderer);
+        table.getColumn("heartrate").setCellRenderer(sensorRenderer);
+        table.getColumn("power").setCellRenderer(sensorRenderer);
 
         // Set row sorter
-        TableRowSorter<TableModel> sorter = new TableRowSorter<>(table.getModel());
+        sorter = new TableRowSorter<>(table.getModel());
         table.setRowSorter(sorter);
         sorter.toggleSortOrder(0);        // sorts ascending
         sorter.toggleSortOrder(0);        // sorts descending
@@ -172,14 +290,171 @@ public class MainFrame extends JFrame {
                     selTracks.add(tracks.get(idx));
                 }
 
-                viewer.showRoute(selTracks);
-                trackChart.setTracks(selTracks);
+                showTracks(selTracks);
             }
         });
 
         return table;
     }
 
+    /**
+     * Prepares the painters and the chart data of the tracks in the
+     * background and shows them once they are ready. A pending preparation
+     * of a previous selection is cancelled.
+     *
+     * @param selTracks the tracks to show
+     */
+    private void showTracks(final List<Track> selTracks) {
+        if (selectionWorker != null) {
+            selectionWorker.cancel(true);
+        }
+
+        pendingMarker = null;
+
+        final RouteColoring coloring = viewer.getRouteColoring();
+
+        selectionWorker = new SwingWorker<MapViewer.PreparedRoutes, Void>() {
+            @Override
+            protected MapViewer.PreparedRoutes doInBackground() {
+                for (Track track : selTracks) {
+                    if (isCancelled()) {
+                        return null;
+                    }
+
+                    // computed once and cached in the track
+                    track.getColumns();
+                    track.getTimeIndex();
+                }
+
+                return MapViewer.prepareRoutes(selTracks, coloring);
+            }
+
+            @Override
+            protected void done() {
+                // the result of an outdated selection is dropped
+                if (selectionWorker != this || isCancelled()) {
+                    return;
+                }
+
+                selectionWorker = null;
+
+                try {
+                    applySelection(selTracks, get());
+                } catch (InterruptedException | ExecutionException e) {
+                    log.error("Error preparing the selected tracks", e);
+                }
+            }
+        };
+
+        selectionWorker.execute();
+    }
+
+    private void applySelection(List<Track> selTracks, MapViewer.PreparedRoutes prepared) {
+        shownTracks = selTracks;
+        viewer.showRoute(prepared);
+        trackChart.setTracks(selTracks);
+        resetPlayback();
+
+        if (pendingMarker != null) {
+            viewer.setMarker(pendingMarker[0], pendingMarker[1]);
+            trackChart.setMarker(pendingMarker[0], pendingMarker[1]);
+            pendingMarker = null;
+        }
+    }
+
+    /**
+     * Selects the track in the table and moves the markers to the point
+     *
+     * @param series the index of the track in the list of shown tracks
+     * @param index the index of the track point
+     */
+    private void selectTrackPoint(int series, int index) {
+        Track track = shownTracks.get(series);
+
+        if (shownTracks.size() > 1) {
+            List<Track> tracks = ((TrackTableModel) table.getModel()).getTracks();
+            int row = table.convertRowIndexToView(tracks.indexOf(track));
+
+            if (row < 0) {
+                return;
+            }
+
+            // the shown tracks are updated asynchronously - the marker is set afterwards
+            table.getSelectionModel().setSelectionInterval(row, row);
+            table.scrollRectToVisible(table.getCellRect(row, 0, true));
+
+            if (selectionWorker != null) {
+                pendingMarker = new int[]{0, index};
+                return;
+            }
+
+            series = 0;
+        }
+
+        viewer.setMarker(series, index);
+        trackChart.setMarker(series, index);
+    }
+
+    /**
+     * @return the gaps of all shown tracks to the first one at an elapsed time
+     */
+    private String getGapSummary(long time) {
+        Track ref = shownTracks.get(0);
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 1; i < shownTracks.size(); i++) {
+            Track track = shownTracks.get(i);
+            double timeGap = RaceComparison.getTimeGap(ref, track, time);
+            double distGap = RaceComparison.getDistanceGap(ref, track, time);
+
+            if (sb.length() > 0) {
+                sb.append(" | ");
+            }
+
+            sb.append(String.format("#%d: %+.0fs, %+.0fm", i + 1, timeGap, distGap));
+        }
+
+        return sb.toString();
+    }
+
+    private void resetPlayback() {
+        playback.pause();
+
+        long duration = 0;
+        for (Track track : shownTracks) {
+            duration = Math.max(duration, track.getTimeIndex().getDuration());
+        }
+
+        playback.setDuration(duration);
+        viewer.clearPlayback();
+        trackChart.clearPlayback();
+    }
+
+    private void filterByArea(Rectangle2D area) {
+        filterArea = area;
+        filterMatches.clear();
+
+        if (area == null) {
+            sorter.setRowFilter(null);
+            statusBar.setStatus("Ready");
+            return;
+        }
+
+        Profiler.start(area);
+        filterMatches.addAll(spatialIndex.findTracks(area));
+        String time = Profiler.getString(area);
+
+        final List<Track> tracks = ((TrackTableModel) table.getModel()).getTracks();
+        sorter.setRowFilter(new RowFilter<TableModel, Integer>() {
+            @Override
+            public boolean include(Entry<? extends TableModel, ? extends Integer> entry) {
+                return filterMatches.contains(tracks.get(entry.getIdentifier()));
+            }
+        });
+
+        statusBar.setStatus(filterMatches.size() + " tracks in selected area (" + time + ")");
+    }
+
     private JMenuBar createMenu(List<Track> tracks) {
         //Create the menu bar.
         JMenuBar menuBar = new JMenuBar();
@@ -193,6 +468,8 @@ public class MainFrame extends JFrame {
         menu.addSeparator();
         menu.add(fixElevationItem(tracks));
         menu.add(insertGapsItem(tracks));
+        menu.add(findSimilarItem(tracks));
+        menu.add(waypointPassagesItem(tracks));
 
         //a group of radio button menu items
         ButtonGroup group = new ButtonGroup();
@@ -217,6 +494,35 @@ public class MainFrame extends JFrame {
         cbMenuItem.setMnemonic(KeyEvent.VK_H);
         menu.add(cbMenuItem);
 
+        menu = new JMenu("View");
+        menu.setMnemonic(KeyEvent.VK_V);
+        menuBar.add(menu);
+
+        menu.add(heatmapItem());
+        menu.addSeparator();
+
+        ButtonGroup coloringGroup = new ButtonGroup();
+        for (RouteColoring coloring : RouteColoring.values()) {
+            JMenuItem item = routeColoringItem(coloring);
+            coloringGroup.add(item);
+            menu.add(item);
+        }
+
+        menu = new JMenu("Playback");
+        menu.setMnemonic(KeyEvent.VK_P);
+        menuBar.add(menu);
+
+        menu.add(playItem());
+        menu.add(stopItem());
+        menu.addSeparator();
+
+        ButtonGroup speedGroup = new ButtonGroup();
+        for (int speed : new int[] {1, 10, 100, 1000}) {
+            JMenuItem item = playbackSpeedItem(speed);
+            speedGroup.add(item);
+            menu.add(item);
+        }
+
         //Build second menu in the menu bar.
         menu = new JMenu("Another Menu");
         menu.setMnemonic(KeyEvent.VK_N);
@@ -227,6 +533,104 @@ public class MainFrame extends JFrame {
         return menuBar;
     }
 
+    private void saveSimilarityIndex(File indexFile) {
+        try {
+            similarityIndex.save(indexFile);
+        } catch (IOException e) {
+            log.warn("Could not write similarity index", e);
+        }
+    }
+
+    private JMenuItem heatmapItem() {
+        final JCheckBoxMenuItem menuItem = new JCheckBoxMenuItem();
+        menuItem.setAction(new AbstractAction() {
+            private static final long serialVersionUID = 6251370390174834781L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                viewer.setHeatmapVisible(menuItem.isSelected());
+            }
+        });
+
+        menuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_H, ActionEvent.ALT_MASK));
+        menuItem.setText("Show all tracks");
+        menuItem.setMnemonic(KeyEvent.VK_A);
+        menuItem.setSelected(viewer.isHeatmapVisible());
+
+        return menuItem;
+    }
+
+    private JMenuItem playItem() {
+        JMenuItem menuItem = new JMenuItem(new AbstractAction() {
+            private static final long serialVersionUID = 4270462178530637829L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (playback.isRunning()) {
+                    playback.pause();
+                } else {
+                    playback.start();
+                }
+            }
+        });
+
+        menuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_P, ActionEvent.CTRL_MASK));
+        menuItem.setText("Play/Pause");
+        menuItem.setMnemonic(KeyEvent.VK_P);
+
+        return menuItem;
+    }
+
+    private JMenuItem stopItem() {
+        JMenuItem menuItem = new JMenuItem(new AbstractAction() {
+            private static final long serialVersionUID = -7324561082374561293L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                playback.stop();
+                viewer.clearPlayback();
+                trackChart.clearPlayback();
+            }
+        });
+
+        menuItem.setText("Stop");
+        menuItem.setMnemonic(KeyEvent.VK_S);
+
+        return menuItem;
+    }
+
+    private JMenuItem playbackSpeedItem(final int speed) {
+        JRadioButtonMenuItem menuItem = new JRadioButtonMenuItem(new AbstractAction() {
+            private static final long serialVersionUID = 1862034957614538253L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                playback.setSpeed(speed);
+            }
+        });
+
+        menuItem.setText(speed + "x");
+        menuItem.setSelected(playback.getSpeed() == speed);
+
+        return menuItem;
+    }
+
+    private JMenuItem routeColoringItem(final RouteColoring coloring) {
+        JRadioButtonMenuItem menuItem = new JRadioButtonMenuItem(new AbstractAction() {
+            private static final long serialVersionUID = -2315468218374263547L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                viewer.setRouteColoring(coloring);
+            }
+        });
+
+        menuItem.setText("Color: " + coloring.getLabel());
+        menuItem.setSelected(viewer.getRouteColoring() == coloring);
+
+        return menuItem;
+    }
+
     private JMenuItem exportTrackItem(final List<Track> tracks) {
         JMenuItem menuItem = new JMenuItem(new AbstractAction() {
             private static final long serialVersionUID = -3691668348789171952L;
@@ -304,6 +708,119 @@ public class MainFrame extends JFrame {
         return menuItem;
     }
 
+    private JMenuItem findSimilarItem(final List<Track> tracks) {
+        JMenuItem menuItem = new JMenuItem(new AbstractAction() {
+            private static final long serialVersionUID = 2857734931716429375L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                int idx = table.getSelectedRow();
+
+                if (idx < 0) {
+                    return;
+                }
+
+                Track query = tracks.get(table.convertRowIndexToModel(idx));
+
+                Profiler.start(query);
+                List<RouteSimilarityIndex.Match> matches = similarityIndex.findSimilar(query);
+                String time = Profiler.getString(query);
+
+                List<Track> similar = new ArrayList<>();
+                for (RouteSimilarityIndex.Match match : matches) {
+                    similar.add(match.getTrack());
+                }
+                selectTracks(similar);
+
+                statusBar.setStatus("Found " + matches.size() + " similar tracks in " + time);
+            }
+        });
+
+        menuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, ActionEvent.ALT_MASK));
+        menuItem.setText("Find similar tracks");
+        menuItem.setMnemonic(KeyEvent.VK_S);
+
+        return menuItem;
+    }
+
+    private JMenuItem waypointPassagesItem(final List<Track> tracks) {
+        JMenuItem menuItem = new JMenuItem(new AbstractAction() {
+            private static final long serialVersionUID = -1287406153530834817L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                // collect the waypoints of all tracks, files share them
+                Map<String, Waypoint> waypoints = new LinkedHashMap<>();
+                for (Track track : tracks) {
+                    for (Waypoint wpt : track.getWaypoints()) {
+                        String label = wpt.getName() + String.format(" (%.5f, %.5f)",
+                                wpt.getPos().getLatitude(), wpt.getPos().getLongitude());
+                        waypoints.put(label, wpt);
+                    }
+                }
+
+                if (waypoints.isEmpty()) {
+                    JOptionPane.showMessageDialog(MainFrame.this, "No waypoints available");
+                    return;
+                }
+
+                Object[] labels = waypoints.keySet().toArray();
+                Object sel = JOptionPane.showInputDialog(MainFrame.this, "Waypoint", "Waypoint passages",
+                        JOptionPane.QUESTION_MESSAGE, null, labels, labels[0]);
+
+                if (sel == null) {
+                    return;
+                }
+
+                Waypoint wpt = waypoints.get(sel);
+                List<WaypointIndex.Passage> passages = waypointIndex.findPassages(wpt.getPos(), 50);
+
+                DateFormat df = SimpleDateFormat.getDateTimeInstance();
+                StringBuilder sb = new StringBuilder();
+                List<Track> passed = new ArrayList<>();
+
+                for (WaypointIndex.Passage p : passages) {
+                    sb.append(df.format(p.getArrival()));
+                    sb.append(" - ");
+                    sb.append(df.format(p.getDeparture()));
+                    sb.append(String.format(" (%.0f m)%n", p.getDistance()));
+                    passed.add(p.getTrack());
+                }
+
+                table.clearSelection();
+                selectTracks(passed);
+
+                statusBar.setStatus(passages.size() + " passages at " + wpt.getName());
+                JOptionPane.showMessageDialog(MainFrame.this, (sb.length() > 0) ? sb.toString() : "No passages", String.valueOf(sel),
+                        JOptionPane.INFORMATION_MESSAGE);
+            }
+        });
+
+        menuItem.setText("Waypoint passages");
+        menuItem.setMnemonic(KeyEvent.VK_W);
+
+        return menuItem;
+    }
+
+    /**
+     * Adds tracks to the table selection. Listeners are notified only once.
+     *
+     * @param sel the tracks to select
+     */
+    private void selectTracks(List<Track> sel) {
+        List<Track> tracks = ((TrackTableModel) table.getModel()).getTracks();
+        ListSelectionModel selModel = table.getSelectionModel();
+
+        selModel.setValueIsAdjusting(true);
+        for (Track track : sel) {
+            int row = table.convertRowIndexToView(tracks.indexOf(track));
+            if (row >= 0) {
+                selModel.addSelectionInterval(row, row);
+            }
+        }
+        selModel.setValueIsAdjusting(false);
+    }
+
     /**
      * @param args the program args (ignored)
      */
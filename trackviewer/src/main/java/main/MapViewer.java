@@ -1,12 +1,33 @@
 package main;
 
+import java.awt.BasicStroke;
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.geom.Rectangle2D;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.MouseInputAdapter;
 import javax.swing.event.MouseInputListener;
 
 import org.jxmapviewer.JXMapViewer;
@@ -20,6 +41,9 @@ import org.jxmapviewer.viewer.TileFactoryInfo;
 import org.jxmapviewer.painter.CompoundPainter;
 import org.jxmapviewer.painter.Painter;
 
+import main.map.FrameStatistics;
+import main.map.ProjectedRoute;
+import main.map.RouteHitTester;
 import track.Track;
 
 /**
@@ -32,12 +56,86 @@ public class MapViewer extends JComponent {
 
     private static final long serialVersionUID = -1636285199192286728L;
 
+    /**
+     * The max. distance of a click from a route in pixels
+     */
+    private static final double HIT_TOLERANCE = 6;
+
+    /**
+     * The color of highlighted track parts
+     */
+    private static final Color HIGHLIGHT_COLOR = new Color(255, 200, 0);
+
     private CompoundPainter<JXMapViewer> painter;
 
-    private JXMapViewer mapViewer = new JXMapViewer();
+    /**
+     * The delay after the last interaction until the routes are rendered in
+     * high quality again
+     */
+    private static final int IDLE_DELAY = 250;
+
+    private final FrameStatistics frameStats = new FrameStatistics(1000);
+
+    private JXMapViewer mapViewer = new JXMapViewer() {
+        private static final long serialVersionUID = 3424857364532645413L;
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            long start = System.nanoTime();
+            super.paintComponent(g);
+
+            if (frameStats.record(System.nanoTime() - start)) {
+                MapViewer.this.firePropertyChange("frameStats", null, frameStats.getSummary());
+            }
+        }
+    };
+
+    private Timer idleTimer;
 
     private List<RoutePainter> routePainters = new ArrayList<>();
     private List<MarkerPainter> markerPainters = new ArrayList<>();
+    private List<RoutePainter> highlightPainters = new ArrayList<>();
+
+    private RouteTilePainter routeTilePainter;
+    private RouteColoring routeColoring = RouteColoring.NONE;
+    private HeatmapPainter heatmapPainter;
+    private boolean heatmapVisible;
+    private Timer heatmapRepaintTimer;
+
+    private final ExecutorService tileExecutor = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread th = new Thread(r, "Route tile renderer");
+                    th.setDaemon(true);
+                    th.setPriority(Thread.MIN_PRIORITY);
+                    return th;
+                }
+            });
+
+    private RouteHitTester hitTester;
+
+    private List<Track> tracks = new ArrayList<>();
+    private final PlaybackPainter playbackPainter = new PlaybackPainter();
+
+    private List<SelectionListener> selectionListeners = new CopyOnWriteArrayList<>();
+    private List<AreaSelectionListener> areaSelectionListeners = new CopyOnWriteArrayList<>();
+    private Rectangle selectionRect;
+
+    private final Painter<JXMapViewer> selectionPainter = new Painter<JXMapViewer>() {
+        @Override
+        public void paint(Graphics2D g, JXMapViewer map, int w, int h) {
+            if (selectionRect == null) {
+                return;
+            }
+
+            g.setColor(new Color(0, 0, 128, 40));
+            g.fill(selectionRect);
+            g.setColor(new Color(0, 0, 128));
+            g.setStroke(new BasicStroke(1));
+            g.draw(selectionRect);
+        }
+    };
 
     /**
      * Constructs a new instance
@@ -55,15 +153,54 @@ public class MapViewer extends JComponent {
                 + File.separator + ".jxmapviewer2");
         LocalResponseCache.installResponseCache(baseURL, cacheDir, false);
 
-        // Add interactions
-        MouseInputListener mia = new PanMouseInputListener(mapViewer);
+        // Add interactions - shift + drag selects an area, everything else pans
+        MouseInputListener mia = new AreaSelectionHandler(new PanMouseInputListener(mapViewer));
         mapViewer.addMouseListener(mia);
         mapViewer.addMouseMotionListener(mia);
         mapViewer.addMouseWheelListener(new ZoomMouseWheelListenerCursor(mapViewer));
+        mapViewer.addMouseWheelListener(new MouseWheelListener() {
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                startInteraction();
+            }
+        });
+        mapViewer.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (SwingUtilities.isLeftMouseButton(e) && !e.isShiftDown()) {
+                    selectAt(e.getPoint());
+                }
+            }
+        });
 
         painter = new CompoundPainter<>();
         mapViewer.setOverlayPainter(painter);
 
+        heatmapPainter = new HeatmapPainter(tileExecutor);
+        updatePainters();
+
+        idleTimer = new Timer(IDLE_DELAY, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (routeTilePainter != null) {
+                    routeTilePainter.setHighQuality(true);
+                }
+                mapViewer.repaint();
+            }
+        });
+        idleTimer.setRepeats(false);
+
+        // tracks are added in quick succession while loading - repaint only twice per second
+        heatmapRepaintTimer = new Timer(500, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (heatmapVisible) {
+                    mapViewer.repaint();
+                }
+            }
+        });
+        heatmapRepaintTimer.setRepeats(false);
+
         GeoPosition frankfurt = new GeoPosition(50, 7, 0, 8, 41, 0);
 
         // Set the focus
@@ -74,41 +211,257 @@ public class MapViewer extends JComponent {
         add(mapViewer, BorderLayout.CENTER);
     }
 
+    /**
+     * The painters of a list of tracks. They can be created outside the EDT
+     * with {@link MapViewer#prepareRoutes(List, RouteColoring)}.
+     */
+    public static class PreparedRoutes {
+
+        private final List<Track> tracks;
+        private final List<RoutePainter> routePainters = new ArrayList<>();
+        private final List<MarkerPainter> markerPainters = new ArrayList<>();
+        private final List<ProjectedRoute> routes = new ArrayList<>();
+        private final RouteColoring coloring;
+
+        PreparedRoutes(List<Track> tracks, RouteColoring coloring) {
+            this.tracks = new ArrayList<>(tracks);
+            this.coloring = coloring;
+        }
+    }
+
+    /**
+     * Creates the painters of a list of tracks. This does not touch the
+     * component and can be called from any thread.
+     *
+     * @param tracks the list of tracks
+     * @param coloring the coloring mode of the routes
+     * @return the painters
+     */
+    public static PreparedRoutes prepareRoutes(List<Track> tracks, RouteColoring coloring) {
+        PreparedRoutes prepared = new PreparedRoutes(tracks, coloring);
+
+        int i = 0;
+        for (Track track : prepared.tracks) {
+            List<GeoPosition> route = track.getRoute();
+            Color color = ColorProvider.getMainColor(i++);
+
+            MarkerPainter markerPainter = new MarkerPainter(route, color);
+            RoutePainter routePainter = new RoutePainter(track, color);
+            routePainter.setColoring(coloring);
+
+            prepared.markerPainters.add(markerPainter);
+            prepared.routePainters.add(routePainter);
+            prepared.routes.add(routePainter.getProjectedRoute());
+
+            markerPainter.addMarker(0);
+            markerPainter.addMarker(route.size() - 1);
+        }
+
+        return prepared;
+    }
+
     /**
      * Displays one or more track routes
      *
      * @param tracks the list of track
      */
     public void showRoute(List<Track> tracks) {
+        showRoute(prepareRoutes(tracks, routeColoring));
+    }
+
+    /**
+     * Displays the routes of prepared painters
+     *
+     * @param prepared the painters
+     */
+    public void showRoute(PreparedRoutes prepared) {
         // Set the focus
 //        mapViewer.setZoom(10);
 //        mapViewer.setAddressLocation(track.getPoints().iterator().next().getPos());
 
         markerPainters.clear();
         routePainters.clear();
+        highlightPainters.clear();
+        playbackPainter.clear();
 
-        List<Painter<JXMapViewer>> painters = new ArrayList<>();
+        this.tracks = prepared.tracks;
 
-        int i = 0;
-        for (Track track : tracks) {
-            List<GeoPosition> route = track.getRoute();
-            Color color = ColorProvider.getMainColor(i++);
+        markerPainters.addAll(prepared.markerPainters);
+        routePainters.addAll(prepared.routePainters);
 
-            MarkerPainter markerPainter = new MarkerPainter(route, color);
-            RoutePainter routePainter = new RoutePainter(route, color);
+        // the coloring may have changed during the preparation
+        if (prepared.coloring != routeColoring) {
+            for (RoutePainter rp : routePainters) {
+                rp.setColoring(routeColoring);
+            }
+        }
+
+        if (routeTilePainter != null) {
+            routeTilePainter.dispose();
+        }
 
-            markerPainters.add(markerPainter);
-            routePainters.add(routePainter);
+        // routes are rendered into tiles in the background, only the markers are painted live
+        routeTilePainter = new RouteTilePainter(routePainters, tileExecutor);
 
-            markerPainter.addMarker(0);
-            markerPainter.addMarker(route.size() - 1);
+        updatePainters();
+
+        hitTester = new RouteHitTester(prepared.routes);
+    }
+
+    /**
+     * Missing route tiles are rendered as quick previews while the map is
+     * moved. They are rendered in full quality once the map is idle.
+     */
+    private void startInteraction() {
+        if (routeTilePainter != null) {
+            routeTilePainter.setHighQuality(false);
+        }
+
+        idleTimer.restart();
+    }
+
+    private void updatePainters() {
+        List<Painter<JXMapViewer>> painters = new ArrayList<>();
+
+        if (heatmapVisible) {
+            painters.add(heatmapPainter);
+        }
 
-            painters.add(routePainter);
-            painters.add(markerPainter);
+        if (routeTilePainter != null) {
+            painters.add(routeTilePainter);
         }
 
+        painters.addAll(highlightPainters);
+        painters.addAll(markerPainters);
+        painters.add(playbackPainter);
+        painters.add(selectionPainter);
         painter.setPainters(painters);
+    }
+
+    /**
+     * @param coloring the coloring mode of the routes
+     */
+    public void setRouteColoring(RouteColoring coloring) {
+        routeColoring = coloring;
 
+        for (RoutePainter rp : routePainters) {
+            rp.setColoring(coloring);
+        }
+
+        if (routeTilePainter != null) {
+            routeTilePainter.invalidate();
+        }
+
+        mapViewer.repaint();
+    }
+
+    /**
+     * @return the coloring mode of the routes
+     */
+    public RouteColoring getRouteColoring() {
+        return routeColoring;
+    }
+
+    /**
+     * @param visible true if the density of all tracks should be shown
+     */
+    public void setHeatmapVisible(boolean visible) {
+        heatmapVisible = visible;
+        updatePainters();
+    }
+
+    /**
+     * @return true if the density of all tracks is shown
+     */
+    public boolean isHeatmapVisible() {
+        return heatmapVisible;
+    }
+
+    /**
+     * Adds a track to the heatmap. Can be called from any thread.
+     *
+     * @param track the track
+     */
+    public void addHeatmapTrack(Track track) {
+        heatmapPainter.addTrack(track);
+
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (!heatmapRepaintTimer.isRunning()) {
+                    heatmapRepaintTimer.start();
+                }
+            }
+        });
+    }
+
+    private void selectAt(Point pt) {
+        if (hitTester == null) {
+            return;
+        }
+
+        // convert from viewport to world bitmap
+        Rectangle rect = mapViewer.getViewportBounds();
+        double x = rect.x + pt.x;
+        double y = rect.y + pt.y;
+
+        RouteHitTester.Hit hit = hitTester.hitTest(mapViewer.getTileFactory(), mapViewer.getZoom(), x, y, HIT_TOLERANCE);
+
+        if (hit == null) {
+            return;
+        }
+
+        for (SelectionListener sl : selectionListeners) {
+            sl.selected(hit.getRoute(), hit.getIndex());
+        }
+    }
+
+    /**
+     * @param sl the selection listener that is notified when a route is
+     * clicked
+     */
+    public void addSelectionListener(SelectionListener sl) {
+        selectionListeners.add(sl);
+    }
+
+    /**
+     * @param sl the selection listener
+     */
+    public void removeSelectionListener(SelectionListener sl) {
+        selectionListeners.remove(sl);
+    }
+
+    /**
+     * @param listener the listener to add
+     */
+    public void addAreaSelectionListener(AreaSelectionListener listener) {
+        areaSelectionListeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to remove
+     */
+    public void removeAreaSelectionListener(AreaSelectionListener listener) {
+        areaSelectionListeners.remove(listener);
+    }
+
+    private void fireAreaSelected(Rectangle rect) {
+        Rectangle2D area = null;
+
+        // a shift-click without dragging clears the selection
+        if (rect.width > 2 && rect.height > 2) {
+            GeoPosition topLeft = mapViewer.convertPointToGeoPosition(new Point(rect.x, rect.y));
+            GeoPosition bottomRight = mapViewer.convertPointToGeoPosition(new Point(rect.x + rect.width, rect.y + rect.height));
+
+            area = new Rectangle2D.Double();
+            area.setFrameFromDiagonal(
+                    topLeft.getLongitude(), topLeft.getLatitude(),
+                    bottomRight.getLongitude(), bottomRight.getLatitude());
+        }
+
+        for (AreaSelectionListener listener : areaSelectionListeners) {
+            listener.areaSelected(area);
+        }
     }
 
     /**
@@ -116,17 +469,192 @@ public class MapViewer extends JComponent {
      * @param index the index of the track point
      */
     public void setMarker(int track, int index) {
-        MarkerPainter mp = markerPainters.get(track);
+        setMarkers(Collections.singletonMap(track, index));
+    }
+
+    /**
+     * Moves the markers of several tracks with a single repaint
+     *
+     * @param indices the index of the track point per track index
+     */
+    public void setMarkers(Map<Integer, Integer> indices) {
+        Rectangle dirty = null;
+
+        for (Map.Entry<Integer, Integer> entry : indices.entrySet()) {
+            int track = entry.getKey();
+
+            if (track < 0 || track >= markerPainters.size()) {
+                continue;
+            }
+
+            MarkerPainter mp = markerPainters.get(track);
+
+            Rectangle oldBounds = mp.getBounds(mapViewer);
+
+            int index = entry.getValue();
+            int minIdx = 0;
+            int maxIdx = mp.getRoute().size() - 1;
+
+            mp.clearMarkers();
+            mp.addMarker(minIdx);
+            mp.addMarker(maxIdx);
+
+            if (index > minIdx && index < maxIdx) {
+                mp.addMarker(index);
+            }
+
+            dirty = union(dirty, oldBounds);
+            dirty = union(dirty, mp.getBounds(mapViewer));
+        }
+
+        // repaint only the area of the old and the new markers
+        repaintUnion(dirty, null);
+    }
+
+    private static Rectangle union(Rectangle rc1, Rectangle rc2) {
+        if (rc1 == null) {
+            return rc2;
+        }
+
+        if (rc2 != null) {
+            rc1.add(rc2);
+        }
+
+        return rc1;
+    }
+
+    /**
+     * Highlights parts of the shown tracks (e.g. the zoomed range of the chart)
+     *
+     * @param ranges the index range per track (elements may be <code>null</code>)
+     * or <code>null</code> to remove all highlights
+     */
+    public void setHighlights(List<Range<Integer>> ranges) {
+        highlightPainters.clear();
+
+        if (ranges != null) {
+            for (int i = 0; i < ranges.size() && i < tracks.size(); i++) {
+                Range<Integer> range = ranges.get(i);
+
+                if (range != null) {
+                    List<GeoPosition> route = tracks.get(i).getRoute();
+                    List<GeoPosition> part = route.subList(range.getStart(), range.getEnd() + 1);
+                    highlightPainters.add(new RoutePainter(part, HIGHLIGHT_COLOR));
+                }
+            }
+        }
+
+        updatePainters();
+        mapViewer.repaint();
+    }
+
+    /**
+     * Moves the playback dots of all tracks to an elapsed time
+     *
+     * @param time the elapsed time in millisecs.
+     */
+    public void setPlaybackTime(long time) {
+        Rectangle dirty = playbackPainter.getBounds(mapViewer);
+
+        playbackPainter.clear();
+
+        for (int i = 0; i < tracks.size(); i++) {
+            GeoPosition pos = tracks.get(i).getTimeIndex().getPosition(time);
+
+            if (pos != null) {
+                playbackPainter.addPosition(pos, ColorProvider.getMainColor(i));
+            }
+        }
+
+        repaintUnion(dirty, playbackPainter.getBounds(mapViewer));
+    }
+
+    /**
+     * Removes the playback dots
+     */
+    public void clearPlayback() {
+        Rectangle dirty = playbackPainter.getBounds(mapViewer);
 
-        int minIdx = 0;
-        int maxIdx = mp.getRoute().size() - 1;
+        playbackPainter.clear();
+
+        repaintUnion(dirty, null);
+    }
 
-        mp.clearMarkers();
-        mp.addMarker(minIdx);
-        mp.addMarker(maxIdx);
+    private void repaintUnion(Rectangle rc1, Rectangle rc2) {
+        Rectangle dirty = union(rc1, rc2);
+
+        if (dirty != null) {
+            mapViewer.repaint(dirty);
+        }
+    }
+
+    /**
+     * Selects a rectangular area while shift is pressed and forwards all other
+     * events to the delegate
+     */
+    private class AreaSelectionHandler extends MouseInputAdapter {
+
+        private final MouseInputListener delegate;
+        private Point start;
+
+        AreaSelectionHandler(MouseInputListener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void mousePressed(MouseEvent e) {
+            if (e.isShiftDown() && SwingUtilities.isLeftMouseButton(e)) {
+                start = e.getPoint();
+                selectionRect = new Rectangle(start);
+                mapViewer.repaint();
+            } else {
+                delegate.mousePressed(e);
+            }
+        }
+
+        @Override
+        public void mouseDragged(MouseEvent e) {
+            if (start != null) {
+                selectionRect = new Rectangle(start);
+                selectionRect.add(e.getPoint());
+                mapViewer.repaint();
+            } else {
+                startInteraction();
+                delegate.mouseDragged(e);
+            }
+        }
+
+        @Override
+        public void mouseReleased(MouseEvent e) {
+            if (start != null) {
+                Rectangle rect = selectionRect;
+                start = null;
+                selectionRect = null;
+                mapViewer.repaint();
+                fireAreaSelected(rect);
+            } else {
+                delegate.mouseReleased(e);
+            }
+        }
+
+        @Override
+        public void mouseClicked(MouseEvent e) {
+            delegate.mouseClicked(e);
+        }
+
+        @Override
+        public void mouseEntered(MouseEvent e) {
+            delegate.mouseEntered(e);
+        }
+
+        @Override
+        public void mouseExited(MouseEvent e) {
+            delegate.mouseExited(e);
+        }
 
-        if (index > minIdx && index < maxIdx) {
-            mp.addMarker(index);
+        @Override
+        public void mouseMoved(MouseEvent e) {
+            delegate.mouseMoved(e);
         }
     }
 }
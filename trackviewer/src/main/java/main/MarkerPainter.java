@@ -3,10 +3,13 @@ package main;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.jxmapviewer.JXMapViewer;
 import org.jxmapviewer.viewer.GeoPosition;
@@ -19,10 +22,18 @@ import org.jxmapviewer.painter.AbstractPainter;
  */
 public class MarkerPainter extends AbstractPainter<JXMapViewer> {
 
+    private static final int MAX_CACHE_SIZE = 1024;
+
     private List<GeoPosition> track;
     private List<Integer> markers = new ArrayList<>();
     private Color color;
 
+    /**
+     * The marker positions and directions of the current zoom level
+     */
+    private final Map<Integer, double[]> cache = new HashMap<>();
+    private int cacheZoom = -1;
+
     /**
      * @param track the track
      * @param color the color
@@ -40,7 +51,8 @@ public class MarkerPainter extends AbstractPainter<JXMapViewer> {
     }
 
     /**
-     * Adds a marker at the specified index
+     * Adds a marker at the specified index. This does not trigger a repaint,
+     * see {@link #getBounds(JXMapViewer)}.
      *
      * @param index the index in the data
      */
@@ -50,14 +62,53 @@ public class MarkerPainter extends AbstractPainter<JXMapViewer> {
         }
 
         markers.add(index);
+    }
 
-        setDirty(true);
+    /**
+     * @param map the map
+     * @return the area that is covered by the markers in viewport coordinates
+     * or <code>null</code> if there are no visible markers
+     */
+    public Rectangle getBounds(JXMapViewer map) {
+        int width = getStrokeWidth(map.getZoom());
+        double len = 5 * width;
+
+        Rectangle viewport = map.getViewportBounds();
+        Rectangle bounds = null;
+
+        for (Integer idx : markers) {
+            double[] marker = getMarker(idx, map);
+
+            if (marker == null) {
+                continue;
+            }
+
+            double nx = marker[3] * len;
+            double ny = -marker[2] * len;
+
+            Rectangle rc = new Rectangle((int) (marker[0] - nx), (int) (marker[1] - ny), 0, 0);
+            rc.add(marker[0] + nx, marker[1] + ny);
+            rc.grow(width + 2, width + 2);
+            rc.translate(-viewport.x, -viewport.y);
+
+            if (bounds == null) {
+                bounds = rc;
+            } else {
+                bounds.add(rc);
+            }
+        }
+
+        return bounds;
     }
 
     @Override
     public void doPaint(Graphics2D g, JXMapViewer map, int unused1, int unused2) {
-        // incorporate zoom to some extent
-        int width = Math.max(1, 10 - map.getZoom() * 2);
+        int width = getStrokeWidth(map.getZoom());
+
+        // convert from viewport to world bitmap
+        Rectangle rect = map.getViewportBounds();
+        g = (Graphics2D) g.create();
+        g.translate(-rect.x, -rect.y);
 
         // do the drawing
         g.setColor(new Color(128, 0, 0));
@@ -70,26 +121,63 @@ public class MarkerPainter extends AbstractPainter<JXMapViewer> {
         g.setStroke(new BasicStroke(width));
 
         draw(g, map, 5 * width);
+
+        g.dispose();
+    }
+
+    private static int getStrokeWidth(int zoom) {
+        // incorporate zoom to some extent
+        return Math.max(1, 10 - zoom * 2);
     }
 
     private void draw(Graphics2D g, JXMapViewer map, double len) {
         for (Integer idx : markers) {
-            GeoPosition gp = track.get(idx);
-            Point2D p = map.convertGeoPositionToPoint(gp);
-            Point2D dir = getDirection(idx, map);
+            double[] marker = getMarker(idx, map);
 
-            if (dir != null) {
-                Point2D n = new Point2D.Double(dir.getY(), -dir.getX());
+            if (marker != null) {
+                double nx = marker[3];
+                double ny = -marker[2];
 
                 g.drawLine(
-                        (int) (p.getX() - n.getX() * len), (int) (p.getY()
-                        - n.getY() * len),
-                        (int) (p.getX() + n.getX() * len), (int) (p.getY()
-                        + n.getY() * len));
+                        (int) (marker[0] - nx * len), (int) (marker[1] - ny * len),
+                        (int) (marker[0] + nx * len), (int) (marker[1] + ny * len));
             }
         }
     }
 
+    /**
+     * @return (x, y, dirX, dirY) in world bitmap coordinates or
+     * <code>null</code> if there is no direction
+     */
+    private double[] getMarker(int index, JXMapViewer map) {
+        int zoom = map.getZoom();
+
+        // scrubbing through a long track would fill the cache otherwise
+        if (zoom != cacheZoom || cache.size() > MAX_CACHE_SIZE) {
+            cache.clear();
+            cacheZoom = zoom;
+        }
+
+        if (cache.containsKey(index)) {
+            return cache.get(index);
+        }
+
+        double[] marker = null;
+        Point2D dir = getDirection(index, map);
+
+        if (dir != null) {
+            Point2D p = toPixel(track.get(index), map);
+            marker = new double[] { p.getX(), p.getY(), dir.getX(), dir.getY() };
+        }
+
+        cache.put(index, marker);
+        return marker;
+    }
+
+    private static Point2D toPixel(GeoPosition pos, JXMapViewer map) {
+        return map.getTileFactory().geoToPixel(pos, map.getZoom());
+    }
+
     private Point2D getDirection(int index, JXMapViewer map) {
         int range = 1;
         double distSq = 0;
@@ -107,8 +195,8 @@ public class MarkerPainter extends AbstractPainter<JXMapViewer> {
             GeoPosition gpHigh = track.get(highBound);
             GeoPosition gpLow = track.get(lowBound);
 
-            Point2D ptHigh = map.convertGeoPositionToPoint(gpHigh);
-            Point2D ptLow = map.convertGeoPositionToPoint(gpLow);
+            Point2D ptHigh = toPixel(gpHigh, map);
+            Point2D ptLow = toPixel(gpLow, map);
 
             dx = ptHigh.getX() - ptLow.getX();
             dy = ptHigh.getY() - ptLow.getY();
@@ -0,0 +1,153 @@
+package main;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.swing.Timer;
+
+/**
+ * Advances the elapsed time of a playback at display frame rate. The time
+ * is derived from the system clock, so a slow frame does not slow down the
+ * playback.
+ *
+ * @author Martin Steiger
+ */
+public class PlaybackController {
+
+    /**
+     * The frame interval in millisecs. (about 60 fps)
+     */
+    private static final int FRAME_INTERVAL = 16;
+
+    private final Timer timer;
+    private final List<PlaybackListener> listeners = new CopyOnWriteArrayList<>();
+
+    private double speed = 1.0;
+    private double time;
+    private long duration;
+    private long lastTick;
+
+    /**
+     * Creates a stopped playback
+     */
+    public PlaybackController() {
+        timer = new Timer(FRAME_INTERVAL, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                tick();
+            }
+        });
+        timer.setCoalesce(true);
+    }
+
+    /**
+     * Starts or resumes the playback - it starts over if the end has been reached
+     */
+    public void start() {
+        if (time >= duration) {
+            time = 0;
+        }
+
+        lastTick = System.nanoTime();
+        timer.start();
+    }
+
+    /**
+     * Pauses the playback
+     */
+    public void pause() {
+        timer.stop();
+    }
+
+    /**
+     * Stops the playback and rewinds to the start
+     */
+    public void stop() {
+        timer.stop();
+        setTime(0);
+    }
+
+    /**
+     * @return true if the playback is running
+     */
+    public boolean isRunning() {
+        return timer.isRunning();
+    }
+
+    /**
+     * @param speed the time factor (e.g. 100 for 100x)
+     */
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    /**
+     * @return the time factor
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @param duration the length of the playback in millisecs.
+     */
+    public void setDuration(long duration) {
+        this.duration = duration;
+
+        if (time > duration) {
+            setTime(duration);
+        }
+    }
+
+    /**
+     * @param time the elapsed time in millisecs.
+     */
+    public void setTime(long time) {
+        this.time = Math.max(0, Math.min(duration, time));
+        fireTimeChanged();
+    }
+
+    /**
+     * @return the elapsed time in millisecs.
+     */
+    public long getTime() {
+        return (long) time;
+    }
+
+    /**
+     * @param listener the listener to add
+     */
+    public void addPlaybackListener(PlaybackListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to remove
+     */
+    public void removePlaybackListener(PlaybackListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        time += (now - lastTick) / 1000000.0 * speed;
+        lastTick = now;
+
+        if (time >= duration) {
+            time = duration;
+            timer.stop();
+        }
+
+        fireTimeChanged();
+    }
+
+    private void fireTimeChanged() {
+        long t = (long) time;
+
+        for (PlaybackListener listener : listeners) {
+            listener.timeChanged(t);
+        }
+    }
+}
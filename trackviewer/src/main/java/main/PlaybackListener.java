@@ -0,0 +1,14 @@
+package main;
+
+/**
+ * Fired whenever the playback time has changed
+ *
+ * @author Martin Steiger
+ */
+public interface PlaybackListener {
+
+    /**
+     * @param time the elapsed time in millisecs.
+     */
+    public void timeChanged(long time);
+}
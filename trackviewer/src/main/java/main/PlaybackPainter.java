@@ -0,0 +1,87 @@
+package main;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jxmapviewer.JXMapViewer;
+import org.jxmapviewer.painter.Painter;
+import org.jxmapviewer.viewer.GeoPosition;
+
+/**
+ * Paints the current positions of a playback as dots
+ *
+ * @author Martin Steiger
+ */
+public class PlaybackPainter implements Painter<JXMapViewer> {
+
+    private static final int RADIUS = 6;
+
+    private final List<GeoPosition> positions = new ArrayList<>();
+    private final List<Color> colors = new ArrayList<>();
+
+    /**
+     * Removes all positions
+     */
+    public void clear() {
+        positions.clear();
+        colors.clear();
+    }
+
+    /**
+     * @param pos the position
+     * @param color the color of the dot
+     */
+    public void addPosition(GeoPosition pos, Color color) {
+        positions.add(pos);
+        colors.add(color);
+    }
+
+    /**
+     * @param map the map
+     * @return the area that is covered by the dots in viewport coordinates
+     * or <code>null</code> if there are none
+     */
+    public Rectangle getBounds(JXMapViewer map) {
+        Rectangle bounds = null;
+
+        for (GeoPosition pos : positions) {
+            Point2D pt = map.convertGeoPositionToPoint(pos);
+            Rectangle rc = new Rectangle((int) pt.getX() - RADIUS - 2, (int) pt.getY() - RADIUS - 2,
+                    2 * RADIUS + 4, 2 * RADIUS + 4);
+
+            if (bounds == null) {
+                bounds = rc;
+            } else {
+                bounds.add(rc);
+            }
+        }
+
+        return bounds;
+    }
+
+    @Override
+    public void paint(Graphics2D g, JXMapViewer map, int w, int h) {
+        g = (Graphics2D) g.create();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setStroke(new BasicStroke(2));
+
+        for (int i = 0; i < positions.size(); i++) {
+            Point2D pt = map.convertGeoPositionToPoint(positions.get(i));
+            int x = (int) pt.getX() - RADIUS;
+            int y = (int) pt.getY() - RADIUS;
+
+            g.setColor(colors.get(i));
+            g.fillOval(x, y, 2 * RADIUS, 2 * RADIUS);
+            g.setColor(Color.BLACK);
+            g.drawOval(x, y, 2 * RADIUS, 2 * RADIUS);
+        }
+
+        g.dispose();
+    }
+}
@@ -0,0 +1,103 @@
+package main;
+
+import main.chart.Series;
+import track.ResampledTrack;
+import track.Resampler;
+import track.Track;
+
+/**
+ * Compares tracks on the same route with a reference track (ghost race).
+ * The tracks are resampled on a common distance or time axis with
+ * {@link Resampler}.
+ *
+ * @author Martin Steiger
+ */
+public class RaceComparison {
+
+    /**
+     * The default number of samples on the common axis
+     */
+    public static final int SAMPLES = 1000;
+
+    /**
+     * @param ref the reference track
+     * @param other the compared track
+     * @param samples the number of samples
+     * @return the time gap in seconds (positive if behind) over the distance
+     * in meters
+     */
+    public static Series computeTimeGaps(Track ref, Track other, int samples) {
+        double length = Math.min(ref.getTimeIndex().getTotalDistance(), other.getTimeIndex().getTotalDistance());
+        double step = (length > 0) ? length / samples : 1;
+
+        ResampledTrack refSamples = Resampler.resample(ref, Resampler.Axis.DISTANCE, step, length);
+        ResampledTrack otherSamples = Resampler.resample(other, Resampler.Axis.DISTANCE, step, length);
+
+        int count = Math.min(refSamples.size(), otherSamples.size());
+        double[] refTimes = refSamples.getTimes();
+        double[] otherTimes = otherSamples.getTimes();
+
+        double[] x = new double[count];
+        double[] y = new double[count];
+
+        for (int i = 0; i < count; i++) {
+            x[i] = i * step;
+            y[i] = (otherTimes[i] - refTimes[i]) * 0.001;
+        }
+
+        return new Series(x, y);
+    }
+
+    /**
+     * @param ref the reference track
+     * @param other the compared track
+     * @param samples the number of samples
+     * @return the distance gap in meters (positive if ahead) over the elapsed
+     * time in millisecs.
+     */
+    public static Series computeDistanceGaps(Track ref, Track other, int samples) {
+        long duration = Math.min(ref.getTimeIndex().getDuration(), other.getTimeIndex().getDuration());
+        double step = (duration > 0) ? duration / (double) samples : 1;
+
+        ResampledTrack refSamples = Resampler.resample(ref, Resampler.Axis.TIME, step, duration);
+        ResampledTrack otherSamples = Resampler.resample(other, Resampler.Axis.TIME, step, duration);
+
+        int count = Math.min(refSamples.size(), otherSamples.size());
+        double[] refDistances = refSamples.getDistances();
+        double[] otherDistances = otherSamples.getDistances();
+
+        double[] x = new double[count];
+        double[] y = new double[count];
+
+        for (int i = 0; i < count; i++) {
+            x[i] = i * step;
+            y[i] = otherDistances[i] - refDistances[i];
+        }
+
+        return new Series(x, y);
+    }
+
+    /**
+     * @param ref the reference track
+     * @param other the compared track
+     * @param time the elapsed time in millisecs.
+     * @return the time gap in seconds at the position of the reference track
+     * (positive if behind)
+     */
+    public static double getTimeGap(Track ref, Track other, long time) {
+        double dist = ref.getTimeIndex().getDistance(time);
+        double refTime = Math.min(time, ref.getTimeIndex().getDuration());
+
+        return (other.getTimeIndex().getTimeAtDistance(dist) - refTime) * 0.001;
+    }
+
+    /**
+     * @param ref the reference track
+     * @param other the compared track
+     * @param time the elapsed time in millisecs.
+     * @return the distance gap in meters (positive if ahead)
+     */
+    public static double getDistanceGap(Track ref, Track other, long time) {
+        return other.getTimeIndex().getDistance(time) - ref.getTimeIndex().getDistance(time);
+    }
+}
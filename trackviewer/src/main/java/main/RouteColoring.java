@@ -0,0 +1,115 @@
+package main;
+
+import java.awt.Color;
+
+import track.DerivedChannel;
+import track.SensorChannel;
+import track.Track;
+
+/**
+ * Defines how routes are colored. Graded modes quantize a metric into a
+ * fixed palette of {@link #BUCKETS} colors.
+ *
+ * @author Martin Steiger
+ */
+public enum RouteColoring {
+
+    /**
+     * One color per track
+     */
+    NONE("Single color", 0, 0) {
+        @Override
+        public double[] computeValues(Track track) {
+            return null;
+        }
+    },
+
+    /**
+     * The speed in km/h
+     */
+    SPEED("Speed", 0, 50) {
+        @Override
+        public double[] computeValues(Track track) {
+            return track.getChannel(DerivedChannel.SPEED);
+        }
+    },
+
+    /**
+     * The grade in percent
+     */
+    GRADE("Grade", -15, 15) {
+        @Override
+        public double[] computeValues(Track track) {
+            return track.getChannel(DerivedChannel.GRADE);
+        }
+    },
+
+    /**
+     * The heart rate in bpm - tracks without heart rate have a single color
+     */
+    HEART_RATE("Heart rate", 90, 190) {
+        @Override
+        public double[] computeValues(Track track) {
+            return track.hasSensor(SensorChannel.HEART_RATE) ? track.getChannel(SensorChannel.HEART_RATE) : null;
+        }
+    };
+
+    /**
+     * The number of colors
+     */
+    public static final int BUCKETS = 16;
+
+    private static final Color[] PALETTE = createPalette();
+
+    private final String label;
+    private final double min;
+    private final double max;
+
+    private RouteColoring(String label, double min, double max) {
+        this.label = label;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * @param track the track
+     * @return the metric for every track point (must not be modified) or
+     * <code>null</code> if the route has a single color
+     */
+    public abstract double[] computeValues(Track track);
+
+    /**
+     * @param value the metric value
+     * @return the bucket index [0..BUCKETS-1]
+     */
+    public int getBucket(double value) {
+        int bucket = (int) ((value - min) / (max - min) * BUCKETS);
+        return Math.max(0, Math.min(BUCKETS - 1, bucket));
+    }
+
+    /**
+     * @param bucket the bucket index
+     * @return the color of the bucket (blue for low to red for high values)
+     */
+    public static Color getColor(int bucket) {
+        return PALETTE[bucket];
+    }
+
+    /**
+     * @return the label
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    private static Color[] createPalette() {
+        Color[] palette = new Color[BUCKETS];
+
+        for (int i = 0; i < BUCKETS; i++) {
+            float hue = 0.66f * (1 - i / (float) (BUCKETS - 1));
+            palette[i] = new Color(Color.HSBtoRGB(hue, 0.9f, 0.9f));
+        }
+
+        return palette;
+    }
+}
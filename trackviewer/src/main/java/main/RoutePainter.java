@@ -5,14 +5,19 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
-import java.awt.geom.Point2D;
-import java.util.ArrayList;
+import java.awt.geom.Path2D;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.jxmapviewer.JXMapViewer;
 import org.jxmapviewer.viewer.GeoPosition;
+import org.jxmapviewer.viewer.TileFactory;
 import org.jxmapviewer.painter.Painter;
 
+import main.map.ProjectedRoute;
+import track.Track;
+
 /**
  * Paints a route
  *
@@ -23,7 +28,22 @@ public class RoutePainter implements Painter<JXMapViewer> {
     private Color color;
     private boolean antiAlias = true;
 
-    private List<GeoPosition> track;
+    private final ProjectedRoute route;
+    private final Track track;
+
+    private RouteColoring coloring = RouteColoring.NONE;
+    private double[] values;
+
+    /**
+     * The graded route as one path per color, cached per zoom level
+     */
+    private final Map<Integer, GradedPaths> gradedPaths = new HashMap<>();
+
+    private static class GradedPaths {
+
+        private final Path2D[] paths = new Path2D[RouteColoring.BUCKETS];
+        private final Rectangle[] bounds = new Rectangle[RouteColoring.BUCKETS];
+    }
 
     /**
      * @param track the track
@@ -37,12 +57,32 @@ public class RoutePainter implements Painter<JXMapViewer> {
      * @param color the color
      */
     public RoutePainter(List<GeoPosition> track, Color color) {
-        // copy the list so that changes in the 
+        // the projection is a copy so that changes in the
         // original list do not have an effect here
-        this.track = new ArrayList<>(track);
+        this.route = new ProjectedRoute(track);
+        this.track = null;
         this.color = color;
     }
 
+    /**
+     * Draws the track with a level of detail that depends on the zoom level
+     *
+     * @param track the track
+     * @param color the color
+     */
+    public RoutePainter(Track track, Color color) {
+        this.route = new ProjectedRoute(track.getRoute(), track.getSimplification());
+        this.track = track;
+        this.color = color;
+    }
+
+    /**
+     * @return the route in projected coordinates
+     */
+    public ProjectedRoute getProjectedRoute() {
+        return route;
+    }
+
     /**
      * @return the color
      */
@@ -57,6 +97,17 @@ public class RoutePainter implements Painter<JXMapViewer> {
         this.color = color;
     }
 
+    /**
+     * Routes that were not created from a track always have a single color
+     *
+     * @param coloring the coloring mode
+     */
+    public synchronized void setColoring(RouteColoring coloring) {
+        this.coloring = coloring;
+        this.values = (track != null) ? coloring.computeValues(track) : null;
+        this.gradedPaths.clear();
+    }
+
     @Override
     public void paint(Graphics2D g, JXMapViewer map, int w, int h) {
         g = (Graphics2D) g.create();
@@ -65,50 +116,191 @@ public class RoutePainter implements Painter<JXMapViewer> {
         Rectangle rect = map.getViewportBounds();
         g.translate(-rect.x, -rect.y);
 
+        paintRoute(g, map.getTileFactory(), map.getZoom(), rect, true);
+
+        g.dispose();
+    }
+
+    /**
+     * Paints the route in world bitmap coordinates. This does not access the
+     * map component, so it can be called from any thread.
+     *
+     * @param g the graphics object (in world bitmap coordinates)
+     * @param tileFactory the tile factory that defines the projection
+     * @param zoom the zoom level
+     * @param rect the area to paint in world bitmap pixels
+     * @param highQuality false to draw a quick preview (a single pass with
+     * a more simplified route and without anti-aliasing)
+     */
+    public void paintRoute(Graphics2D g, TileFactory tileFactory, int zoom, Rectangle rect, boolean highQuality) {
+        int width = getStrokeWidth(zoom);
+
+        ProjectedRoute.Level level = route.getLevel(tileFactory, zoom, !highQuality);
+
+        // skip chunks that are not visible, also considering the stroke width
+        Rectangle visible = getVisibleArea(rect, zoom);
+
+        GradedPaths graded = getGradedPaths(tileFactory, zoom, !highQuality);
+
+        if (!highQuality) {
+            g.setStroke(new BasicStroke(width));
+            drawRoute(g, level, graded, visible);
+            return;
+        }
+
         if (antiAlias) {
             g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         }
 
-        // incorporate zoom to some extent
-        int width = Math.max(1, 10 - map.getZoom() * 2);
-
         // do the drawing
         g.setColor(new Color(128, 0, 0));
         g.setStroke(new BasicStroke(width + 2));
 
-        drawRoute(g, map);
+        drawRoute(g, level, visible);
 
         // do the drawing again
-        g.setColor(color);
         g.setStroke(new BasicStroke(width));
 
-        drawRoute(g, map);
+        drawRoute(g, level, graded, visible);
+    }
 
-        g.dispose();
+    /**
+     * @param tileFactory the tile factory that defines the projection
+     * @param zoom the zoom level
+     * @param rect the area in world bitmap pixels
+     * @param highQuality false for the quick preview
+     * @return true if {@link #paintRoute} may paint anything in the area
+     */
+    public boolean intersects(TileFactory tileFactory, int zoom, Rectangle rect, boolean highQuality) {
+        ProjectedRoute.Level level = route.getLevel(tileFactory, zoom, !highQuality);
+        Rectangle visible = getVisibleArea(rect, zoom);
+
+        for (int c = 0; c < level.getChunkCount(); c++) {
+            if (level.intersects(c, visible)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static int getStrokeWidth(int zoom) {
+        // incorporate zoom to some extent
+        return Math.max(1, 10 - zoom * 2);
+    }
+
+    private static Rectangle getVisibleArea(Rectangle rect, int zoom) {
+        int width = getStrokeWidth(zoom);
+        Rectangle visible = new Rectangle(rect);
+        visible.grow(width + 2, width + 2);
+        return visible;
+    }
+
+    /**
+     * Draws the route in its single color or with the graded paths
+     */
+    private void drawRoute(Graphics2D g, ProjectedRoute.Level level, GradedPaths graded, Rectangle visible) {
+        if (graded == null) {
+            g.setColor(color);
+            drawRoute(g, level, visible);
+            return;
+        }
+
+        for (int b = 0; b < RouteColoring.BUCKETS; b++) {
+            if (graded.paths[b] != null && graded.bounds[b].intersects(visible)) {
+                g.setColor(RouteColoring.getColor(b));
+                g.draw(graded.paths[b]);
+            }
+        }
+    }
+
+    /**
+     * @return the paths of the colored route or <code>null</code> if the route has a single color
+     */
+    private synchronized GradedPaths getGradedPaths(TileFactory tileFactory, int zoom, boolean coarse) {
+        if (values == null) {
+            return null;
+        }
+
+        int key = coarse ? -zoom - 1 : zoom;
+        GradedPaths graded = gradedPaths.get(key);
+
+        if (graded == null) {
+            graded = new GradedPaths();
+
+            ProjectedRoute.Level level = route.getLevel(tileFactory, zoom, coarse);
+            int[] xs = level.getX();
+            int[] ys = level.getY();
+
+            int prevBucket = -1;
+
+            for (int k = 1; k < level.size(); k++) {
+                // the color of a segment is defined by its end point
+                int bucket = coloring.getBucket(values[level.getIndex(k)]);
+
+                Path2D path = graded.paths[bucket];
+                if (path == null) {
+                    path = new Path2D.Float();
+                    graded.paths[bucket] = path;
+                }
+
+                if (bucket != prevBucket) {
+                    path.moveTo(xs[k - 1], ys[k - 1]);
+                }
+
+                path.lineTo(xs[k], ys[k]);
+                prevBucket = bucket;
+            }
+
+            for (int b = 0; b < RouteColoring.BUCKETS; b++) {
+                if (graded.paths[b] != null) {
+                    graded.bounds[b] = graded.paths[b].getBounds();
+                    graded.bounds[b].grow(1, 1);
+                }
+            }
+
+            gradedPaths.put(key, graded);
+        }
+
+        return graded;
     }
 
     /**
+     * Draws consecutive visible chunks as one polyline
+     *
      * @param g the graphics object
-     * @param map the map
+     * @param level the route in world bitmap pixels
+     * @param visible the visible area in world bitmap pixels
      */
-    private void drawRoute(Graphics2D g, JXMapViewer map) {
-        int lastX = 0;
-        int lastY = 0;
+    private void drawRoute(Graphics2D g, ProjectedRoute.Level level, Rectangle visible) {
+        int chunks = level.getChunkCount();
+        int runStart = -1;
 
-        boolean first = true;
+        for (int c = 0; c <= chunks; c++) {
+            boolean isVisible = c < chunks && level.intersects(c, visible);
 
-        for (GeoPosition gp : track) {
-            // convert geo-coordinate to world bitmap pixel
-            Point2D pt = map.getTileFactory().geoToPixel(gp, map.getZoom());
+            if (isVisible && runStart < 0) {
+                runStart = c;
+            }
 
-            if (first) {
-                first = false;
-            } else {
-                g.drawLine(lastX, lastY, (int) pt.getX(), (int) pt.getY());
+            if (!isVisible && runStart >= 0) {
+                drawPolyline(g, level, level.getChunkStart(runStart), level.getChunkEnd(c - 1));
+                runStart = -1;
             }
+        }
+    }
+
+    private static void drawPolyline(Graphics2D g, ProjectedRoute.Level level, int first, int last) {
+        int count = last - first + 1;
 
-            lastX = (int) pt.getX();
-            lastY = (int) pt.getY();
+        if (first == 0) {
+            g.drawPolyline(level.getX(), level.getY(), count);
+        } else {
+            int[] xs = new int[count];
+            int[] ys = new int[count];
+            System.arraycopy(level.getX(), first, xs, 0, count);
+            System.arraycopy(level.getY(), first, ys, 0, count);
+            g.drawPolyline(xs, ys, count);
         }
     }
 }
@@ -0,0 +1,61 @@
+package main;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.jxmapviewer.viewer.TileFactory;
+
+/**
+ * Paints a set of routes from pre-rendered tiles. Panning only composites
+ * the cached images, no matter how many routes are shown.
+ *
+ * @author Martin Steiger
+ */
+public class RouteTilePainter extends AbstractTilePainter {
+
+    private final List<RoutePainter> routePainters;
+
+    /**
+     * @param routePainters the route painters (copied)
+     * @param executor the executor that renders the tiles
+     */
+    public RouteTilePainter(List<RoutePainter> routePainters, ExecutorService executor) {
+        super(executor);
+
+        this.routePainters = new ArrayList<>(routePainters);
+    }
+
+    @Override
+    protected BufferedImage renderTile(TileFactory tileFactory, int zoom, Rectangle tileRect, boolean highQuality) {
+        List<RoutePainter> visible = new ArrayList<>();
+
+        for (RoutePainter rp : routePainters) {
+            if (rp.intersects(tileFactory, zoom, tileRect, highQuality)) {
+                visible.add(rp);
+            }
+        }
+
+        // most tiles are empty - do not allocate an image for them
+        if (visible.isEmpty()) {
+            return null;
+        }
+
+        BufferedImage img = new BufferedImage(tileRect.width, tileRect.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+
+        g.translate(-tileRect.x, -tileRect.y);
+
+        for (RoutePainter rp : visible) {
+            Graphics2D g2 = (Graphics2D) g.create();
+            rp.paintRoute(g2, tileFactory, zoom, tileRect, highQuality);
+            g2.dispose();
+        }
+
+        g.dispose();
+        return img;
+    }
+}
@@ -0,0 +1,17 @@
+package main;
+
+import java.util.Map;
+
+/**
+ * Receives the latest selection of several series at once
+ *
+ * @author Martin Steiger
+ */
+public interface SelectionBatchListener {
+
+    /**
+     * @param indices the index of the selection per data series (only the
+     * series that have changed)
+     */
+    public void selected(Map<Integer, Integer> indices);
+}
@@ -0,0 +1,116 @@
+package main;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.swing.Timer;
+
+/**
+ * Coalesces selection events. Only the latest index per series is kept and
+ * delivered to the listeners once per frame. Must be used on the EDT only.
+ *
+ * @author Martin Steiger
+ */
+public class SelectionBus implements SelectionListener {
+
+    /**
+     * The frame interval in millisecs. (about 60 fps)
+     */
+    private static final int FRAME_INTERVAL = 16;
+
+    private final Timer timer;
+    private final Map<Integer, Integer> pending = new LinkedHashMap<>();
+
+    private final List<SelectionListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<SelectionBatchListener> batchListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates an empty bus
+     */
+    public SelectionBus() {
+        timer = new Timer(FRAME_INTERVAL, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                flush();
+            }
+        });
+        timer.setRepeats(false);
+    }
+
+    /**
+     * Replaces any pending selection of the series
+     */
+    @Override
+    public void selected(int series, int index) {
+        pending.put(series, index);
+
+        if (!timer.isRunning()) {
+            timer.start();
+        }
+    }
+
+    /**
+     * Delivers the pending selections immediately
+     */
+    public void flush() {
+        timer.stop();
+
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, Integer> batch = Collections.unmodifiableMap(new LinkedHashMap<>(pending));
+        pending.clear();
+
+        for (SelectionBatchListener listener : batchListeners) {
+            listener.selected(batch);
+        }
+
+        for (SelectionListener listener : listeners) {
+            for (Map.Entry<Integer, Integer> entry : batch.entrySet()) {
+                listener.selected(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Discards the pending selections
+     */
+    public void clear() {
+        timer.stop();
+        pending.clear();
+    }
+
+    /**
+     * @param listener the listener that receives every series separately
+     */
+    public void addSelectionListener(SelectionListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to remove
+     */
+    public void removeSelectionListener(SelectionListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param listener the listener that receives all series at once
+     */
+    public void addSelectionBatchListener(SelectionBatchListener listener) {
+        batchListeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to remove
+     */
+    public void removeSelectionBatchListener(SelectionBatchListener listener) {
+        batchListeners.remove(listener);
+    }
+}
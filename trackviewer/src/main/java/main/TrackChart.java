@@ -5,20 +5,30 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.awt.geom.Point2D;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.swing.ButtonGroup;
 import javax.swing.ImageIcon;
 import javax.swing.JComponent;
 import javax.swing.JToggleButton;
 import javax.swing.JToolBar;
+import javax.swing.SwingUtilities;
 
+import main.chart.Decimator;
 import main.chart.JChart;
+import main.chart.Series;
+import track.Channel;
+import track.DerivedChannel;
+import track.SensorChannel;
+import track.TimeIndex;
 import track.Track;
-import track.TrackPoint;
+import track.TrackColumns;
 
 /**
  * The chart component as well as a toolbar to configure it.
@@ -30,8 +40,26 @@ public class TrackChart extends JComponent {
     private static final long serialVersionUID = 5779546384127375283L;
 
     private enum ChartModeVert {
-        Height,
-        Speed,
+        Height(null),
+        Speed(null),
+        Gap(null),
+        SmoothedSpeed(DerivedChannel.SMOOTHED_SPEED),
+        Grade(DerivedChannel.GRADE),
+        VerticalSpeed(DerivedChannel.VERTICAL_SPEED),
+        Pace(DerivedChannel.PACE),
+        HeartRate(SensorChannel.HEART_RATE),
+        Cadence(SensorChannel.CADENCE),
+        Power(SensorChannel.POWER),
+        Temperature(SensorChannel.TEMPERATURE);
+
+        /**
+         * The channel of derived modes or <code>null</code>
+         */
+        private final Channel channel;
+
+        private ChartModeVert(Channel channel) {
+            this.channel = channel;
+        }
     }
 
     private enum ChartModeHorz {
@@ -42,10 +70,33 @@ public class TrackChart extends JComponent {
     private ChartModeVert chartModeVert = ChartModeVert.Height;
     private ChartModeHorz chartModeHorz = ChartModeHorz.Distance;
 
+    /**
+     * The horizontal mode of the chart data - the marker is an x-value in its units
+     */
+    private ChartModeHorz loadedModeHorz = chartModeHorz;
+    private List<Track> loadedTracks;
+    private boolean showLaps;
+
     private List<Track> tracks;
+    private List<Range<Integer>> visibleRanges;
     private JChart chart;
 
-    private List<SelectionListener> selectionListeners = new CopyOnWriteArrayList<>();
+    private JToggleButton heightButton;
+
+    /**
+     * The buttons of the sensor modes - they are enabled if a track has the sensor
+     */
+    private final Map<ChartModeVert, JToggleButton> sensorButtons = new EnumMap<>(ChartModeVert.class);
+
+    /**
+     * The laps are detected once per track
+     */
+    private final Map<Track, LapCache> lapCache = new WeakHashMap<>();
+
+    /**
+     * Mouse drags are delivered once per frame with the latest index per track
+     */
+    private final SelectionBus selectionBus = new SelectionBus();
 
     /**
      * Creates a new instance
@@ -56,23 +107,36 @@ public class TrackChart extends JComponent {
         MouseAdapter ma = new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
-                select(e.getX());
+                if (isSelection(e)) {
+                    select(e.getX());
+                }
             }
 
             @Override
             public void mouseDragged(MouseEvent e) {
-                select(e.getX());
+                if (isSelection(e)) {
+                    select(e.getX());
+                }
+            }
+
+            /**
+             * Shift-drag and the other buttons zoom and pan the chart
+             */
+            private boolean isSelection(MouseEvent e) {
+                return SwingUtilities.isLeftMouseButton(e) && !e.isShiftDown();
             }
 
             private void select(int x) {
+                if (tracks == null || chart.getData().isEmpty()) {
+                    return;
+                }
+
                 chart.setMarker(x);
 
-                for (int i = 0; i < chart.getData().size(); i++) {
-                    int idx = chart.getIndexAt(i, x);
+                double value = chart.getValueAt(x);
 
-                    for (SelectionListener sl : selectionListeners) {
-                        sl.selected(i, idx);
-                    }
+                for (int i = 0; i < tracks.size(); i++) {
+                    selectionBus.selected(i, getIndexAt(tracks.get(i), value));
                 }
             }
         };
@@ -80,6 +144,15 @@ public class TrackChart extends JComponent {
         chart.addMouseListener(ma);
         chart.addMouseMotionListener(ma);
 
+        chart.addPropertyChangeListener("viewRange", new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                List<Range<Integer>> oldRanges = visibleRanges;
+                visibleRanges = getVisibleRanges();
+                firePropertyChange("visibleRanges", oldRanges, visibleRanges);
+            }
+        });
+
         //Create the toolbar.
         JToolBar toolBar = new JToolBar(JToolBar.VERTICAL);
 
@@ -87,7 +160,7 @@ public class TrackChart extends JComponent {
         toolBar.setRollover(true);
 
         JToggleButton distanceButton = new JToggleButton(new ImageIcon(TrackChart.class.getResource("/images/distance.png")));
-        JToggleButton heightButton = new JToggleButton(new ImageIcon(TrackChart.class.getResource("/images/height.png")));
+        heightButton = new JToggleButton(new ImageIcon(TrackChart.class.getResource("/images/height.png")));
         JToggleButton speedButton = new JToggleButton(new ImageIcon(TrackChart.class.getResource("/images/speed.png")));
         JToggleButton timeButton = new JToggleButton(new ImageIcon(TrackChart.class.getResource("/images/time.png")));
 
@@ -116,6 +189,72 @@ public class TrackChart extends JComponent {
         toolBar.add(heightButton);
         toolBar.add(speedButton);
 
+        JToggleButton gapButton = new JToggleButton("Gap");
+        gapButton.setToolTipText("Time gap (over distance) or distance gap (over time) to the first track");
+        gapButton.getModel().setSelected(chartModeVert == ChartModeVert.Gap);
+        bgh.add(gapButton);
+        toolBar.add(gapButton);
+
+        gapButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                chartModeVert = ChartModeVert.Gap;
+                reload();
+            }
+        });
+
+        for (final ChartModeVert mode : ChartModeVert.values()) {
+            if (mode.channel == null) {
+                continue;
+            }
+
+            JToggleButton channelButton = new JToggleButton(mode.channel.getName());
+            channelButton.setToolTipText(mode.channel.getDescription());
+            channelButton.getModel().setSelected(chartModeVert == mode);
+            bgh.add(channelButton);
+            toolBar.add(channelButton);
+
+            if (mode.channel instanceof SensorChannel) {
+                channelButton.setEnabled(false);
+                sensorButtons.put(mode, channelButton);
+            }
+
+            channelButton.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    chartModeVert = mode;
+                    reload();
+                }
+            });
+        }
+
+        final JToggleButton lapsButton = new JToggleButton("Laps");
+        lapsButton.setToolTipText("Show laps of the first track");
+        lapsButton.getModel().setSelected(showLaps);
+
+        toolBar.addSeparator();
+        toolBar.add(lapsButton);
+
+        lapsButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showLaps = lapsButton.isSelected();
+                reload();
+            }
+        });
+
+        final JToggleButton lttbButton = new JToggleButton("LTTB");
+        lttbButton.setToolTipText("Keep the shape of the lines (LTTB) instead of the min/max of every pixel column");
+        lttbButton.getModel().setSelected(chart.getDecimation() == Decimator.Mode.LTTB);
+        toolBar.add(lttbButton);
+
+        lttbButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                chart.setDecimation(lttbButton.isSelected() ? Decimator.Mode.LTTB : Decimator.Mode.MIN_MAX);
+            }
+        });
+
         distanceButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -159,42 +298,252 @@ public class TrackChart extends JComponent {
     public void setTracks(List<Track> tracks) {
         this.tracks = new ArrayList<>(tracks);
 
+        // pending selections refer to the previous tracks
+        selectionBus.clear();
+
+        updateSensorButtons();
         reload();
     }
 
+    /**
+     * Moves the chart marker to a point of a track
+     *
+     * @param series the index of the track
+     * @param index the index of the track point
+     */
+    public void setMarker(int series, int index) {
+        if (tracks == null || series < 0 || series >= tracks.size()) {
+            return;
+        }
+
+        TrackColumns columns = tracks.get(series).getColumns();
+
+        if (index < 0 || index >= columns.size()) {
+            return;
+        }
+
+        chart.setMarkerValue(getValuesX(columns)[index]);
+    }
+
+    /**
+     * The zoomed range of the chart as index ranges of the track points. A
+     * property change event <code>visibleRanges</code> is fired when it changes.
+     *
+     * @return the ranges per track or <code>null</code> if the full chart is visible
+     */
+    public List<Range<Integer>> getVisibleRanges() {
+        Range<Double> view = chart.getViewRange();
+
+        if (view == null || tracks == null) {
+            return null;
+        }
+
+        List<Range<Integer>> ranges = new ArrayList<>();
+
+        for (Track track : tracks) {
+            int start = Math.max(0, getIndexAt(track, view.getStart()));
+            int end = getIndexAt(track, view.getEnd());
+            ranges.add((end > start) ? new Range<>(start, end) : null);
+        }
+
+        return ranges;
+    }
+
+    /**
+     * @param track the track
+     * @param value the x-value in chart units
+     * @return the index of the track point at the x-value
+     */
+    private int getIndexAt(Track track, double value) {
+        TimeIndex timeIndex = track.getTimeIndex();
+
+        switch (chartModeHorz) {
+            case Distance:
+                return timeIndex.getIndexAtDistance(value * 1000.0);
+
+            case Time:
+                if (track.getPoints().isEmpty()) {
+                    return -1;
+                }
+                long start = track.getPoints().get(0).getTime().getTime();
+                return timeIndex.getIndex((long) (value * 60000.0) - start);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Moves the cursor to the position of the first track at an elapsed time
+     *
+     * @param time the elapsed time in millisecs.
+     */
+    public void setPlaybackTime(long time) {
+        if (tracks == null || tracks.isEmpty() || tracks.get(0).getPoints().isEmpty()) {
+            return;
+        }
+
+        Track track = tracks.get(0);
+        TimeIndex timeIndex = track.getTimeIndex();
+        double x = 0;
+
+        switch (chartModeHorz) {
+            case Distance:
+                x = timeIndex.getDistance(time) * 0.001;
+                break;
+
+            case Time:
+                long start = track.getPoints().get(0).getTime().getTime();
+                x = (start + Math.min(time, timeIndex.getDuration())) / 60000.0;
+                break;
+        }
+
+        chart.setCursorValue(x);
+    }
+
+    /**
+     * Hides the playback cursor
+     */
+    public void clearPlayback() {
+        chart.setCursorValue(Double.NaN);
+    }
+
     /**
      * @param sl the selection listener
      */
     public void addSelectionListener(SelectionListener sl) {
-        selectionListeners.add(sl);
+        selectionBus.addSelectionListener(sl);
     }
 
     /**
      * @param sl the selection listener
      */
     public void removeSelectionListener(SelectionListener sl) {
-        selectionListeners.remove(sl);
+        selectionBus.removeSelectionListener(sl);
+    }
+
+    /**
+     * @param sl the listener that receives the selection of all tracks at once
+     */
+    public void addSelectionBatchListener(SelectionBatchListener sl) {
+        selectionBus.addSelectionBatchListener(sl);
+    }
+
+    /**
+     * @param sl the selection listener
+     */
+    public void removeSelectionBatchListener(SelectionBatchListener sl) {
+        selectionBus.removeSelectionBatchListener(sl);
+    }
+
+    /**
+     * Enables the sensor modes that at least one track has recorded. A
+     * disabled mode falls back to the height.
+     */
+    private void updateSensorButtons() {
+        for (Map.Entry<ChartModeVert, JToggleButton> entry : sensorButtons.entrySet()) {
+            SensorChannel channel = (SensorChannel) entry.getKey().channel;
+            boolean available = false;
+
+            for (Track track : tracks) {
+                available |= track.hasSensor(channel);
+            }
+
+            entry.getValue().setEnabled(available);
+
+            if (!available && chartModeVert == entry.getKey()) {
+                chartModeVert = ChartModeVert.Height;
+                heightButton.setSelected(true);
+            }
+        }
     }
 
     private void reload() {
-        List<List<Point2D>> data = new ArrayList<>();
+        List<Series> data = new ArrayList<>();
 
         if (tracks.isEmpty()) {
             return;
         }
 
         for (Track track : tracks) {
-            List<Point2D> pts = new ArrayList<>();
+            if (chartModeVert == ChartModeVert.Gap) {
+                data.add(computeGaps(tracks.get(0), track));
+                continue;
+            }
 
-            for (TrackPoint trackPt : track.getPoints()) {
-                pts.add(chartPointFromTrackPoint(trackPt));
+            // an empty series keeps the series indices aligned with the tracks
+            if (chartModeVert.channel instanceof SensorChannel && !track.hasSensor((SensorChannel) chartModeVert.channel)) {
+                data.add(new Series(new double[0], new double[0]));
+                continue;
             }
 
-            data.add(pts);
+            TrackColumns columns = track.getColumns();
+            data.add(new Series(getValuesX(columns), getValuesY(track)));
+        }
+
+        // the zoom is kept while the x-values remain the same
+        boolean keepView = loadedModeHorz == chartModeHorz && loadedTracks == tracks;
+
+        if (loadedModeHorz != chartModeHorz) {
+            chart.setMarkerValue(Double.NaN);
+            loadedModeHorz = chartModeHorz;
         }
 
+        loadedTracks = tracks;
+
         updateChartLabels();
-        chart.setData(data);
+        chart.setData(data, keepView);
+        chart.setHighlights(showLaps ? findLaps(tracks.get(0)) : new ArrayList<Range<Double>>());
+    }
+
+    /**
+     * @return the gaps in chart units on a resampled axis
+     */
+    private Series computeGaps(Track ref, Track track) {
+        Series gaps;
+        double scale;
+        double offset;
+
+        switch (chartModeHorz) {
+            case Time:
+                // align the elapsed time with the time axis of the reference track
+                gaps = RaceComparison.computeDistanceGaps(ref, track, RaceComparison.SAMPLES);
+                scale = 1.0 / 60000.0;
+                offset = ref.getPoints().isEmpty() ? 0 : ref.getPoints().get(0).getTime().getTime();
+                break;
+
+            default:
+                gaps = RaceComparison.computeTimeGaps(ref, track, RaceComparison.SAMPLES);
+                scale = 0.001;
+                offset = 0;
+                break;
+        }
+
+        double[] x = gaps.getX();
+
+        for (int i = 0; i < x.length; i++) {
+            x[i] = (offset + x[i]) * scale;
+        }
+
+        return new Series(x, gaps.getY());
+    }
+
+    private List<Range<Double>> findLaps(Track track) {
+        List<Range<Double>> laps = new ArrayList<>();
+        TrackColumns columns = track.getColumns();
+        double[] x = getValuesX(columns);
+
+        // the columns are replaced when the track points change
+        LapCache cached = lapCache.get(track);
+        if (cached == null || cached.columns != columns) {
+            cached = new LapCache(columns, LapDetector.findLaps(track));
+            lapCache.put(track, cached);
+        }
+
+        for (Range<Integer> lap : cached.laps) {
+            laps.add(new Range<>(x[lap.getStart()], x[lap.getEnd()]));
+        }
+
+        return laps;
     }
 
     private void updateChartLabels() {
@@ -206,6 +555,14 @@ public class TrackChart extends JComponent {
             case Speed:
                 chart.setVertDesc("km/h");
                 break;
+
+            case Gap:
+                chart.setVertDesc((chartModeHorz == ChartModeHorz.Distance) ? "s" : "m");
+                break;
+
+            default:
+                chart.setVertDesc(chartModeVert.channel.getUnit());
+                break;
         }
 
         switch (chartModeHorz) {
@@ -219,30 +576,43 @@ public class TrackChart extends JComponent {
         }
     }
 
-    private Point2D chartPointFromTrackPoint(TrackPoint trackPt) {
-        double x = 0;
-        double y = 0;
+    private double[] getValuesX(TrackColumns columns) {
+        switch (chartModeHorz) {
+            case Time:
+                return columns.getTimes();
 
-        switch (chartModeVert) {
-            case Height:
-                y = trackPt.getElevation();
-                break;
+            default:
+                return columns.getDistances();
+        }
+    }
 
-            case Speed:
-                y = trackPt.getSpeed();
-                break;
+    private double[] getValuesY(Track track) {
+        if (chartModeVert.channel != null) {
+            return track.getChannel(chartModeVert.channel);
         }
 
-        switch (chartModeHorz) {
-            case Distance:
-                x = trackPt.getDistance() * 0.001;
-                break;
+        TrackColumns columns = track.getColumns();
 
-            case Time:
-                x = trackPt.getTime().getTime() / 60000.0;
-                break;
+        switch (chartModeVert) {
+            case Speed:
+                return columns.getSpeeds();
+
+            default:
+                return columns.getElevations();
         }
+    }
 
-        return new Point2D.Double(x, y);
+    /**
+     * The laps of a track and the columns they were detected for
+     */
+    private static class LapCache {
+
+        private final TrackColumns columns;
+        private final List<Range<Integer>> laps;
+
+        LapCache(TrackColumns columns, List<Range<Integer>> laps) {
+            this.columns = columns;
+            this.laps = laps;
+        }
     }
 }
@@ -32,6 +32,8 @@ public class TrackComputer {
         for (int i = 0; i < track.getPoints().size(); i++) {
             computeSpeed(track, i);
         }
+
+        track.pointsChanged();
     }
 
     private static void fixInvalidElevations(Track track) {
@@ -14,4 +14,9 @@ public interface TrackLoadListener {
      */
     public void trackLoaded(Track track);
 
+    /**
+     * Called once after all tracks have been read
+     */
+    public void loadingFinished();
+
 }
@@ -114,6 +114,7 @@ public class TrackLoader {
             }
         }
 
+        cb.loadingFinished();
     }
 
     /**
@@ -122,12 +123,22 @@ public class TrackLoader {
      * @throws IOException if something goes wrong
      */
     public static void saveAsGpx(String fname, Track track) throws IOException {
+        saveAsGpx(fname, track, 0);
+    }
+
+    /**
+     * @param fname the filename
+     * @param track the track data
+     * @param tolerance the simplification tolerance in meters (0 writes all points)
+     * @throws IOException if something goes wrong
+     */
+    public static void saveAsGpx(String fname, Track track, double tolerance) throws IOException {
         OutputStream os = null;
 
         try {
             os = new FileOutputStream(fname);
             GpxAdapter gpxAdapter = new GpxAdapter();
-            gpxAdapter.write(os, Collections.singletonList(track));
+            gpxAdapter.write(os, Collections.singletonList(track), tolerance);
         } catch (JAXBException e) {
             throw new IOException(e);
         } finally {
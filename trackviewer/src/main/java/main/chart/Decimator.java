@@ -0,0 +1,152 @@
+package main.chart;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a series to the points that are visible at a given resolution.
+ * Both methods return the indices of the points to keep in ascending order.
+ *
+ * @author Martin Steiger
+ */
+public class Decimator {
+
+    /**
+     * The decimation method
+     */
+    public enum Mode {
+
+        /**
+         * The first, last, min. and max. point of every pixel column. This
+         * is exact for lines and fills.
+         */
+        MIN_MAX,
+
+        /**
+         * Largest-Triangle-Three-Buckets: keeps the visual shape with a fixed
+         * number of points
+         */
+        LTTB
+    }
+
+    /**
+     * @param xs the x coordinates in pixels (ascending)
+     * @param ys the y coordinates in pixels
+     * @param count the number of points
+     * @return the indices of the first, last, min. and max. point of every
+     * pixel column
+     */
+    public static int[] minMax(double[] xs, double[] ys, int count) {
+        int[] result = new int[Math.min(count, 16)];
+        int size = 0;
+
+        int i = 0;
+        while (i < count) {
+            long column = (long) Math.floor(xs[i]);
+
+            int first = i;
+            int min = i;
+            int max = i;
+
+            i++;
+            while (i < count && (long) Math.floor(xs[i]) == column) {
+                if (ys[i] < ys[min]) {
+                    min = i;
+                }
+                if (ys[i] > ys[max]) {
+                    max = i;
+                }
+                i++;
+            }
+
+            int last = i - 1;
+
+            if (size + 4 > result.length) {
+                result = Arrays.copyOf(result, Math.max(size + 4, result.length * 2));
+            }
+
+            // add in ascending order without duplicates
+            result[size++] = first;
+
+            int lo = Math.min(min, max);
+            int hi = Math.max(min, max);
+
+            if (lo != first) {
+                result[size++] = lo;
+            }
+            if (hi != lo && hi != first) {
+                result[size++] = hi;
+            }
+            if (last != hi && last != first) {
+                result[size++] = last;
+            }
+        }
+
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * @param xs the x coordinates (ascending)
+     * @param ys the y coordinates
+     * @param count the number of points
+     * @param threshold the number of points to keep
+     * @return the indices of the points to keep
+     */
+    public static int[] lttb(double[] xs, double[] ys, int count, int threshold) {
+        if (threshold >= count || threshold < 3) {
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        int[] result = new int[threshold];
+        int size = 0;
+
+        // the buckets between the first and the last point
+        double bucketSize = (count - 2) / (double) (threshold - 2);
+
+        int a = 0;
+        result[size++] = a;
+
+        for (int b = 0; b < threshold - 2; b++) {
+            // the average of the next bucket
+            int nextStart = (int) Math.floor((b + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((b + 2) * bucketSize) + 1, count);
+
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgX += xs[j];
+                avgY += ys[j];
+            }
+
+            int nextCount = Math.max(1, nextEnd - nextStart);
+            avgX /= nextCount;
+            avgY /= nextCount;
+
+            // the point of the current bucket with the largest triangle
+            int start = (int) Math.floor(b * bucketSize) + 1;
+            int end = (int) Math.floor((b + 1) * bucketSize) + 1;
+
+            double maxArea = -1;
+            int best = start;
+
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((xs[a] - avgX) * (ys[j] - ys[a]) - (xs[a] - xs[j]) * (avgY - ys[a]));
+
+                if (area > maxArea) {
+                    maxArea = area;
+                    best = j;
+                }
+            }
+
+            result[size++] = best;
+            a = best;
+        }
+
+        result[size++] = count - 1;
+
+        return result;
+    }
+}
@@ -1,5 +1,6 @@
 package main.chart;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
@@ -8,17 +9,26 @@ import java.awt.Insets;
 import java.awt.LinearGradientPaint;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.Toolkit;
+import java.awt.Transparency;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
 
 import main.ColorProvider;
+import main.Range;
 
 /**
  * Draws a line chart with multiple series
@@ -29,69 +39,410 @@ public class JChart extends JComponent {
 
     private static final long serialVersionUID = -7082516791435983958L;
 
+    private static final int MARKER_RADIUS = 3;
+
+    /**
+     * The zoom factor per mouse wheel notch
+     */
+    private static final double ZOOM_STEP = 1.25;
+
+    /**
+     * The smallest visible x-range relative to the full range
+     */
+    private static final double MIN_ZOOM = 1e-4;
+
     private Point2D boundHigh;
     private Point2D boundLow;
+
+    /**
+     * The visible x-range
+     */
+    private double viewMinX;
+    private double viewMaxX;
+
+    /**
+     * The range that is selected with the mouse in screen coordinates or -1
+     */
+    private int selectionStart = -1;
+    private int selectionEnd = -1;
     private String horzDesc;
     private String vertDesc;
 
-    private final List<List<Point2D>> series = new ArrayList<>();
+    private final List<Series> series = new ArrayList<>();
+    private final List<Range<Double>> highlights = new ArrayList<>();
     private final Rectangle chartRect = new Rectangle();
 
-    private int markerPos = -1;
+    /**
+     * The x-value of the marker or NaN
+     */
+    private double markerValue = Double.NaN;
+    private double cursorValue = Double.NaN;
+
+    private Decimator.Mode decimation = Decimator.Mode.MIN_MAX;
+
+    /**
+     * The decimated series in screen coordinates - valid for pathRect only
+     */
+    private final List<Path2D> paths = new ArrayList<>();
+    private final Rectangle pathRect = new Rectangle();
+
+    /**
+     * Grid, series and axes - rebuilt only if the data or the size changes
+     */
+    private BufferedImage staticLayer;
+    private boolean staticLayerValid;
+
+    private final DecimalFormat df = new DecimalFormat("#.##");
 
     /**
      *
      */
     public JChart() {
         super();
+
+        MouseAdapter ma = new MouseAdapter() {
+            private int panStart = -1;
+            private double panMinX;
+            private double panMaxX;
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (series.isEmpty()) {
+                    return;
+                }
+
+                // keep the value below the mouse pointer in place
+                double center = screenXToValueX(e.getX());
+                double factor = Math.pow(ZOOM_STEP, e.getPreciseWheelRotation());
+
+                setViewRange(center - (center - viewMinX) * factor, center + (viewMaxX - center) * factor);
+            }
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (SwingUtilities.isLeftMouseButton(e) && e.isShiftDown()) {
+                    selectionStart = e.getX();
+                    selectionEnd = e.getX();
+                } else if (!SwingUtilities.isLeftMouseButton(e)) {
+                    panStart = e.getX();
+                    panMinX = viewMinX;
+                    panMaxX = viewMaxX;
+                }
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (selectionStart >= 0) {
+                    repaintSelection();
+                    selectionEnd = e.getX();
+                    repaintSelection();
+                } else if (panStart >= 0) {
+                    double delta = (e.getX() - panStart) * (panMaxX - panMinX) / chartRect.getWidth();
+                    setViewRange(panMinX - delta, panMaxX - delta);
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                if (selectionStart >= 0) {
+                    repaintSelection();
+
+                    if (Math.abs(selectionEnd - selectionStart) > 2) {
+                        double v1 = screenXToValueX(selectionStart);
+                        double v2 = screenXToValueX(selectionEnd);
+                        setViewRange(Math.min(v1, v2), Math.max(v1, v2));
+                    }
+                }
+
+                selectionStart = -1;
+                selectionEnd = -1;
+                panStart = -1;
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (SwingUtilities.isLeftMouseButton(e) && e.getClickCount() == 2) {
+                    resetView();
+                }
+            }
+        };
+
+        addMouseListener(ma);
+        addMouseMotionListener(ma);
+        addMouseWheelListener(ma);
+    }
+
+    /**
+     * Shows a part of the x-range. The range is limited to the data.
+     *
+     * @param min the smallest visible x-value
+     * @param max the largest visible x-value
+     */
+    public void setViewRange(double min, double max) {
+        if (boundLow == null) {
+            return;
+        }
+
+        Range<Double> oldRange = getViewRange();
+
+        if (!applyViewRange(min, max)) {
+            return;
+        }
+
+        paths.clear();
+        invalidateStaticLayer();
+
+        firePropertyChange("viewRange", oldRange, getViewRange());
+    }
+
+    /**
+     * Limits the range to the data and stores it
+     *
+     * @return true if the visible range changed
+     */
+    private boolean applyViewRange(double min, double max) {
+        double low = boundLow.getX();
+        double high = boundHigh.getX();
+        double full = high - low;
+        double width = Math.max(max - min, full * MIN_ZOOM);
+
+        if (width >= full) {
+            min = low;
+            max = high;
+        } else {
+            double center = (min + max) * 0.5;
+            min = Math.max(low, center - width * 0.5);
+            max = min + width;
+
+            if (max > high) {
+                max = high;
+                min = max - width;
+            }
+        }
+
+        if (min == viewMinX && max == viewMaxX) {
+            return false;
+        }
+
+        viewMinX = min;
+        viewMaxX = max;
+        return true;
+    }
+
+    /**
+     * Shows the full x-range
+     */
+    public void resetView() {
+        if (boundLow != null) {
+            setViewRange(boundLow.getX(), boundHigh.getX());
+        }
+    }
+
+    /**
+     * @return the visible x-range or <code>null</code> if the full range is visible
+     */
+    public Range<Double> getViewRange() {
+        if (boundLow == null || (viewMinX <= boundLow.getX() && viewMaxX >= boundHigh.getX())) {
+            return null;
+        }
+
+        return new Range<>(viewMinX, viewMaxX);
+    }
+
+    private void repaintSelection() {
+        int x = Math.min(selectionStart, selectionEnd);
+        int w = Math.abs(selectionEnd - selectionStart);
+        repaint(x - 1, chartRect.y, w + 3, chartRect.height + 1);
     }
 
     /**
      * @param pos the x position in screen pixel coordinates
      */
     public void setMarker(int pos) {
-        markerPos = -1;
+        if (pos < chartRect.x || pos > chartRect.x + chartRect.width) {
+            setMarkerValue(Double.NaN);
+        } else {
+            setMarkerValue(screenXToValueX(pos));
+        }
+    }
 
-        if (pos < chartRect.x) {
+    /**
+     * Places the marker at a data point of a series
+     *
+     * @param serie the index of the series
+     * @param index the index of the data point in the series
+     */
+    public void setMarker(int serie, int index) {
+        if (serie < 0 || serie >= series.size()) {
+            setMarkerValue(Double.NaN);
             return;
         }
 
-        if (pos > chartRect.x + chartRect.width) {
+        Series data = series.get(serie);
+
+        if (index < 0 || index >= data.size()) {
+            setMarkerValue(Double.NaN);
             return;
         }
 
-        double val = screenXToValueX(pos);
+        setMarkerValue(data.getX(index));
+    }
 
-        markerPos = findIndexOfValueX(val, 0);
+    /**
+     * Places the marker at an x-value. All series are marked at this
+     * x-value.
+     *
+     * @param value the x-value or NaN to hide the marker
+     */
+    public void setMarkerValue(double value) {
+        repaintMarker();
+        markerValue = value;
+        repaintMarker();
+    }
 
-        repaint();
+    /**
+     * @return the x-value of the marker or NaN
+     */
+    public double getMarkerValue() {
+        return markerValue;
+    }
+
+    /**
+     * @param x the x position in screen pixel coordinates
+     * @return the x-value at the position
+     */
+    public double getValueAt(int x) {
+        return screenXToValueX(x);
+    }
+
+    /**
+     * Moves the cursor (e.g. of a playback). Only the old and the new
+     * cursor columns are repainted.
+     *
+     * @param value the x-value or NaN to hide the cursor
+     */
+    public void setCursorValue(double value) {
+        repaintCursor();
+        cursorValue = value;
+        repaintCursor();
+    }
+
+    /**
+     * Repaints the column of the current marker only
+     */
+    private void repaintMarker() {
+        if (Double.isNaN(markerValue) || series.isEmpty() || chartRect.isEmpty()) {
+            return;
+        }
+
+        int overlap = 6;
+        int x = (int) ValueXToScreenX(markerValue);
+        repaint(x - MARKER_RADIUS - 1, chartRect.y - overlap, 2 * MARKER_RADIUS + 3, chartRect.height + 2 * overlap + 1);
+    }
+
+    private void repaintCursor() {
+        if (Double.isNaN(cursorValue) || series.isEmpty() || chartRect.isEmpty()) {
+            return;
+        }
+
+        int x = (int) ValueXToScreenX(cursorValue);
+        repaint(x - 2, chartRect.y, 5, chartRect.height + 1);
     }
 
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
 
-        if (series.isEmpty()) {
+        if (series.isEmpty() || boundLow == null || getWidth() <= 0 || getHeight() <= 0) {
             return;
         }
 
         updateChartRect();
+        updateStaticLayer();
+
+        g.drawImage(staticLayer, 0, 0, null);
+
+        drawMarker(g);
+        drawCursor(g);
+        drawSelection(g);
+    }
+
+    private void drawSelection(Graphics g) {
+        if (selectionStart < 0) {
+            return;
+        }
+
+        int x = Math.min(selectionStart, selectionEnd);
+        int w = Math.abs(selectionEnd - selectionStart);
+
+        g.setColor(new Color(0, 0, 255, 40));
+        g.fillRect(x, chartRect.y, w, chartRect.height);
+        g.setColor(Color.BLUE);
+        g.drawRect(x, chartRect.y, w, chartRect.height);
+    }
+
+    /**
+     * Marks the static layer as outdated
+     */
+    private void invalidateStaticLayer() {
+        staticLayerValid = false;
+        repaint();
+    }
+
+    private void updateStaticLayer() {
+        int width = getWidth();
+        int height = getHeight();
+
+        if (staticLayer == null || staticLayer.getWidth() != width || staticLayer.getHeight() != height) {
+            if (getGraphicsConfiguration() != null) {
+                staticLayer = getGraphicsConfiguration().createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+            } else {
+                staticLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            }
+            staticLayerValid = false;
+        }
+
+        if (staticLayerValid) {
+            return;
+        }
+
+        Graphics2D g = staticLayer.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, width, height);
+        g.setComposite(AlphaComposite.SrcOver);
+        g.setFont(getFont());
+
+        Map<?, ?> hints = (Map<?, ?>) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+        if (hints != null) {
+            g.addRenderingHints(hints);
+        }
 
         drawHorzGrid(g);
         drawVertGrid(g);
 
-        for (List<Point2D> s : series) {
-            drawSeries(s, (Graphics2D) g);
+        updatePaths();
+
+        Graphics2D clipped = (Graphics2D) g.create();
+        clipped.clip(new Rectangle(chartRect.x, 0, chartRect.width + 1, getHeight()));
+
+        drawHighlights(clipped);
+
+        for (int i = 0; i < paths.size(); i++) {
+            drawSeries(i, clipped);
         }
 
-        drawMarker(g);
+        clipped.dispose();
 
         drawAxisX(g);
         drawAxisY(g);
+
+        g.dispose();
+
+        staticLayerValid = true;
     }
 
     private void drawMarker(Graphics g) {
-        if (markerPos < 0) {
+        if (Double.isNaN(markerValue)) {
             return;
         }
 
@@ -99,17 +450,67 @@ public class JChart extends JComponent {
         int overlap = 6;
         int yTop = (int) chartRect.getMinY() - overlap;
         int yBot = (int) chartRect.getMaxY() + overlap;
+        int x = (int) ValueXToScreenX(markerValue);
+
+        if (x < chartRect.getMinX() || x > chartRect.getMaxX()) {
+            return;
+        }
 
         g.setColor(Color.BLACK);
+        g.drawLine(x, yTop, x, yBot);
+
+        // Mark every series at the same x-value
+        for (int i = 0; i < series.size(); i++) {
+            Series data = series.get(i);
 
-        List<Point2D> data = series.get(0);
+            if (data.isEmpty() || markerValue < data.getMinX() || markerValue > data.getMaxX()) {
+                continue;
+            }
 
-        // If the series has changed, the marker could be invalid
-        if (markerPos < data.size()) {
-            double value = data.get(markerPos).getX();
-            int x = (int) ValueXToScreenX(value);
+            int y = (int) ValueYToScreenY(data.interpolate(markerValue));
 
-            g.drawLine(x, yTop, x, yBot);
+            g.setColor(ColorProvider.getMainColor(i));
+            g.fillOval(x - MARKER_RADIUS, y - MARKER_RADIUS, 2 * MARKER_RADIUS, 2 * MARKER_RADIUS);
+        }
+    }
+
+    private void drawCursor(Graphics g) {
+        if (Double.isNaN(cursorValue)) {
+            return;
+        }
+
+        int x = (int) ValueXToScreenX(cursorValue);
+
+        if (x < chartRect.getMinX() || x > chartRect.getMaxX()) {
+            return;
+        }
+
+        g.setColor(Color.RED);
+        g.drawLine(x, (int) chartRect.getMinY(), x, (int) chartRect.getMaxY());
+    }
+
+    private void drawHighlights(Graphics g) {
+        Color fill = new Color(0, 0, 0, 20);
+
+        int yTop = (int) chartRect.getMinY();
+        int height = (int) chartRect.getHeight();
+
+        for (int i = 0; i < highlights.size(); i++) {
+            Range<Double> range = highlights.get(i);
+
+            int x1 = (int) ValueXToScreenX(range.getStart());
+            int x2 = (int) ValueXToScreenX(range.getEnd());
+
+            // shade every other range
+            if (i % 2 == 1) {
+                g.setColor(fill);
+                g.fillRect(x1, yTop, x2 - x1, height);
+            }
+
+            String str = String.valueOf(i + 1);
+            int tx = (x1 + x2 - g.getFontMetrics().stringWidth(str)) / 2;
+            g.setColor(Color.GRAY);
+            g.drawString(str, tx, yTop + g.getFontMetrics().getAscent());
         }
     }
 
@@ -145,7 +546,6 @@ public class JChart extends JComponent {
         double multi = findMultiplier(chartRect.getHeight(), range, 40.0);
 
         FontMetrics fm = g.getFontMetrics();
-        DecimalFormat df = new DecimalFormat("#.##");
 
         int xLeft = (int) (chartRect.getMinX() - overlap);
         int xRight = (int) (chartRect.getMaxX() + overlap);
@@ -176,16 +576,16 @@ public class JChart extends JComponent {
         final int pad_text = 5;
         final int overlap = 3;
 
-        double range = boundHigh.getX() - boundLow.getX();
+        double range = viewMaxX - viewMinX;
 
         if (range <= 0.0) {
             return;
         }
 
         double multi = findMultiplier(chartRect.getWidth(), range, 40.0);
-        double val = boundLow.getX();
 
-        DecimalFormat df = new DecimalFormat("#.##");
+        // start at the first multiple in the visible range
+        double val = Math.ceil(viewMinX / multi) * multi;
 
         int yTop = (int) chartRect.getMinY() - overlap;
         int yBot = (int) chartRect.getMaxY() + overlap;
@@ -193,7 +593,7 @@ public class JChart extends JComponent {
         FontMetrics fm = g.getFontMetrics();
 
         do {
-            int pos = (int) (chartRect.getMinX() + ((val - boundLow.getX())
+            int pos = (int) (chartRect.getMinX() + ((val - viewMinX)
                     / range) * chartRect.getWidth());
 
             g.setColor(Color.LIGHT_GRAY);
@@ -209,7 +609,7 @@ public class JChart extends JComponent {
             g.drawString(str, tx, ty);
 
             val += multi;
-        } while (val <= boundHigh.getX());
+        } while (val <= viewMaxX);
 
         // Draw right grid line
         g.setColor(Color.LIGHT_GRAY);
@@ -263,13 +663,32 @@ public class JChart extends JComponent {
         g.drawString(vertDesc, x, y);
     }
 
+    /**
+     * Shows new data in the full x-range
+     *
+     * @param data a list of chart series data (it is not copied)
+     */
+    public void setData(List<Series> data) {
+        setData(data, false);
+    }
+
     /**
      * @param data a list of chart series data (it is not copied)
+     * @param keepView true to keep the visible x-range (limited to the new
+     * data), e.g. if the x-values have the same units as before
      */
-    public void setData(List<List<Point2D>> data) {
+    public void setData(List<Series> data, boolean keepView) {
+        Range<Double> oldRange = getViewRange();
+
         series.clear();
+        paths.clear();
+        staticLayerValid = false;
 
         if (data.isEmpty()) {
+            boundLow = null;
+            boundHigh = null;
+            firePropertyChange("viewRange", oldRange, null);
+            repaint();
             return;
         }
 
@@ -277,14 +696,14 @@ public class JChart extends JComponent {
 
         Rectangle2D bounds = null;
 
-        for (List<Point2D> list : data) {
-            Rectangle2D rc = computeBounds(list);
-
-            if (rc == null) // no points
-            {
+        for (Series s : data) {
+            if (s.isEmpty()) {
                 continue;
             }
 
+            Rectangle2D rc = new Rectangle2D.Double(s.getMinX(), s.getMinY(),
+                    s.getMaxX() - s.getMinX(), s.getMaxY() - s.getMinY());
+
             if (bounds == null) {
                 bounds = rc;
             } else {
@@ -297,64 +716,78 @@ public class JChart extends JComponent {
 
             boundLow = new Point2D.Double(bounds.getMinX(), rangeY.getX());
             boundHigh = new Point2D.Double(bounds.getMaxX(), rangeY.getY());
+
+            if (keepView && oldRange != null) {
+                applyViewRange(oldRange.getStart(), oldRange.getEnd());
+            } else {
+                viewMinX = bounds.getMinX();
+                viewMaxX = bounds.getMaxX();
+            }
         }
 
+        firePropertyChange("viewRange", oldRange, getViewRange());
         repaint();
     }
 
+    /**
+     * @param ranges the x-value ranges that are shaded alternately and
+     * numbered (e.g. laps)
+     */
+    public void setHighlights(List<Range<Double>> ranges) {
+        highlights.clear();
+        highlights.addAll(ranges);
+
+        invalidateStaticLayer();
+    }
+
+    /**
+     * @param mode the decimation method that is applied to the series
+     */
+    public void setDecimation(Decimator.Mode mode) {
+        decimation = mode;
+        paths.clear();
+
+        invalidateStaticLayer();
+    }
+
+    /**
+     * @return the decimation method that is applied to the series
+     */
+    public Decimator.Mode getDecimation() {
+        return decimation;
+    }
+
     /**
      * The series data as unmodifiable list
      *
      * @return the series data
      */
-    public List<List<Point2D>> getData() {
+    public List<Series> getData() {
         return Collections.unmodifiableList(series);
     }
 
     private Point2D roundRange(double val_min, double val_max) {
         double rnd_exp;
 
-        rnd_exp = Math.floor(Math.log10(val_max));            // transform to format #.##### * 10 ^ (rnd_exp)
+        // use the magnitude - the values can be negative (e.g. grades)
+        double magnitude = Math.max(Math.abs(val_min), Math.abs(val_max));
+
+        if (magnitude == 0) {
+            return new Point2D.Double(0, 1);
+        }
+
+        rnd_exp = Math.floor(Math.log10(magnitude));            // transform to format #.##### * 10 ^ (rnd_exp)
 
         double rnd_min = Math.floor(val_min / Math.pow(10.0, rnd_exp))
                 * Math.pow(10, rnd_exp);
         double rnd_max = Math.ceil(val_max / Math.pow(10.0, rnd_exp))
                 * Math.pow(10, rnd_exp);
 
-        return new Point2D.Double(rnd_min, rnd_max);
-    }
-
-    private Rectangle2D.Double computeBounds(List<Point2D> points) {
-        if (points.isEmpty()) {
-            return null;
+        if (rnd_max <= rnd_min) {
+            rnd_max = rnd_min + Math.pow(10, rnd_exp);
         }
 
-        Point2D first = points.get(0);
-
-        double minX = first.getX();
-        double minY = first.getY();
-        double maxX = first.getX();
-        double maxY = first.getY();
-
-        for (Point2D pt : points) {
-            if (pt.getX() < minX) {
-                minX = pt.getX();
-            }
-
-            if (pt.getY() < minY) {
-                minY = pt.getY();
-            }
-
-            if (pt.getX() > maxX) {
-                maxX = pt.getX();
-            }
-
-            if (pt.getY() > maxY) {
-                maxY = pt.getY();
-            }
-        }
-
-        return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+        return new Point2D.Double(rnd_min, rnd_max);
     }
 
     private static double findMultiplier(double size, double range, double desiredSpacing) {
@@ -375,36 +808,73 @@ public class JChart extends JComponent {
         return ratio;
     }
 
-    private void drawSeries(List<Point2D> serie, Graphics2D g) {
-        if (serie.isEmpty()) {
+    /**
+     * Decimates the series once per resize, zoom or data change
+     */
+    private void updatePaths() {
+        if (!paths.isEmpty() && pathRect.equals(chartRect)) {
             return;
         }
 
-        Point2D first = serie.get(0);
-        Path2D path = new Path2D.Double();
+        paths.clear();
+        pathRect.setBounds(chartRect);
 
-        double x = ValueXToScreenX(first.getX());
-        double y = ValueYToScreenY(first.getY());
+        for (Series serie : series) {
+            paths.add(createPath(serie));
+        }
+    }
 
-        // Start drawing vertical line from bottom to first point 
-        path.moveTo(x, chartRect.getMaxY());
-        path.lineTo(x, y);
+    private Path2D createPath(Series serie) {
+        if (serie.isEmpty()) {
+            return null;
+        }
+
+        // the visible points plus one on either side
+        int from = Math.max(0, serie.indexOf(viewMinX));
+        int to = Math.min(serie.size() - 1, serie.indexOf(viewMaxX) + 1);
 
-        for (Point2D pt : serie) {
-            x = ValueXToScreenX(pt.getX());
-            y = ValueYToScreenY(pt.getY());
+        // the pyramid reduces the range to a few points per pixel column
+        int[] candidates = serie.getPyramid().getIndices(from, to, 2 * chartRect.width);
+        int count = candidates.length;
 
-            path.lineTo(x, y);
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+
+        for (int i = 0; i < count; i++) {
+            xs[i] = ValueXToScreenX(serie.getX(candidates[i]));
+            ys[i] = ValueYToScreenY(serie.getY(candidates[i]));
         }
 
-        double lastX = x;
+        int[] indices;
+
+        if (decimation == Decimator.Mode.LTTB) {
+            indices = Decimator.lttb(xs, ys, count, 2 * chartRect.width);
+        } else {
+            indices = Decimator.minMax(xs, ys, count);
+        }
+
+        Path2D path = new Path2D.Double(Path2D.WIND_NON_ZERO, indices.length + 2);
+
+        // Start drawing vertical line from bottom to first point 
+        path.moveTo(xs[0], chartRect.getMaxY());
+
+        for (int idx : indices) {
+            path.lineTo(xs[idx], ys[idx]);
+        }
 
         // End drawing with a vertical line to bottom of last point 
-        path.lineTo(lastX, chartRect.getMaxY());
+        path.lineTo(xs[count - 1], chartRect.getMaxY());
+
+        return path;
+    }
+
+    private void drawSeries(int idx, Graphics2D g) {
+        Path2D path = paths.get(idx);
 
-        Path2D filled = new Path2D.Double(path);
+        if (path == null) {
+            return;
+        }
 
-        int idx = series.indexOf(serie);
         Color colorTop = ColorProvider.getTopColor(idx);
         Color colorBottom = ColorProvider.getBottomColor(idx);
         Color colorLine = ColorProvider.getMainColor(idx);
@@ -419,7 +889,7 @@ public class JChart extends JComponent {
 
         g.setPaint(colorLine);
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g.draw(filled);
+        g.draw(path);
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_DEFAULT);
     }
 
@@ -429,13 +899,13 @@ public class JChart extends JComponent {
     }
 
     private double ValueXToScreenX(double val) {
-        double fx = chartRect.getWidth() / (boundHigh.getX() - boundLow.getX());
-        return chartRect.getMinX() + fx * (val - boundLow.getX());
+        double fx = chartRect.getWidth() / (viewMaxX - viewMinX);
+        return chartRect.getMinX() + fx * (val - viewMinX);
     }
 
     private double screenXToValueX(double val) {
-        double fx = (boundHigh.getX() - boundLow.getX()) / chartRect.getWidth();
-        return boundLow.getX() + fx * (val - chartRect.getMinX());
+        double fx = (viewMaxX - viewMinX) / chartRect.getWidth();
+        return viewMinX + fx * (val - chartRect.getMinX());
     }
 
     /**
@@ -443,6 +913,7 @@ public class JChart extends JComponent {
      */
     public void setVertDesc(String text) {
         vertDesc = text;
+        invalidateStaticLayer();
     }
 
     /**
@@ -450,20 +921,7 @@ public class JChart extends JComponent {
      */
     public void setHorzDesc(String text) {
         horzDesc = text;
-    }
-
-    private int findIndexOfValueX(double val, int serie) {
-        int result = -1;
-
-        for (Point2D pt : series.get(serie)) {
-            if (pt.getX() > val) {
-                return result;
-            }
-
-            result++;
-        }
-
-        return result;
+        invalidateStaticLayer();
     }
 
     /**
@@ -474,7 +932,7 @@ public class JChart extends JComponent {
     public int getIndexAt(int serie, int x) {
         double vx = screenXToValueX(x);
 
-        return findIndexOfValueX(vx, serie);
+        return series.get(serie).indexOf(vx);
     }
 
 }
@@ -0,0 +1,167 @@
+package main.chart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The indices of the min. and max. y-values of a series for buckets of
+ * 2, 4, 8, ... points. Any index range can be reduced to its extreme
+ * points with a number of lookups that depends on the requested number of
+ * buckets only, not on the length of the range.
+ *
+ * @author Martin Steiger
+ */
+public class MinMaxPyramid {
+
+    /**
+     * level k (k >= 1) is stored at k - 1 and has buckets of 2^k points
+     */
+    private final List<int[]> minIndices = new ArrayList<>();
+    private final List<int[]> maxIndices = new ArrayList<>();
+
+    private final double[] y;
+
+    /**
+     * @param y the y-values (not copied)
+     */
+    public MinMaxPyramid(double[] y) {
+        this.y = y;
+
+        int count = (y.length + 1) / 2;
+
+        if (y.length < 2) {
+            return;
+        }
+
+        // the first level is built from the raw values
+        int[] mins = new int[count];
+        int[] maxs = new int[count];
+
+        for (int j = 0; j < count; j++) {
+            int a = 2 * j;
+            int b = Math.min(a + 1, y.length - 1);
+            mins[j] = (y[b] < y[a]) ? b : a;
+            maxs[j] = (y[b] > y[a]) ? b : a;
+        }
+
+        minIndices.add(mins);
+        maxIndices.add(maxs);
+
+        while (count > 1) {
+            int[] prevMins = mins;
+            int[] prevMaxs = maxs;
+            int prevCount = count;
+
+            count = (prevCount + 1) / 2;
+            mins = new int[count];
+            maxs = new int[count];
+
+            for (int j = 0; j < count; j++) {
+                int a = 2 * j;
+                int b = Math.min(a + 1, prevCount - 1);
+                mins[j] = (y[prevMins[b]] < y[prevMins[a]]) ? prevMins[b] : prevMins[a];
+                maxs[j] = (y[prevMaxs[b]] > y[prevMaxs[a]]) ? prevMaxs[b] : prevMaxs[a];
+            }
+
+            minIndices.add(mins);
+            maxIndices.add(maxs);
+        }
+    }
+
+    /**
+     * @param from the first index
+     * @param to the last index (inclusive)
+     * @param maxBuckets the max. number of buckets (e.g. the number of pixel columns)
+     * @return the ascending indices of the first, the last and the extreme
+     * points of the buckets in between
+     */
+    public int[] getIndices(int from, int to, int maxBuckets) {
+        int count = to - from + 1;
+
+        if (count <= 0) {
+            return new int[0];
+        }
+
+        int level = 0;
+        while (level < minIndices.size() && (count >> level) > maxBuckets) {
+            level++;
+        }
+
+        if (level == 0) {
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) {
+                all[i] = from + i;
+            }
+            return all;
+        }
+
+        int[] mins = minIndices.get(level - 1);
+        int[] maxs = maxIndices.get(level - 1);
+
+        // the buckets that lie completely inside the range
+        int firstFull = (from + (1 << level) - 1) >> level;
+        int lastFull = ((to + 1) >> level) - 1;
+
+        int[] result = new int[2 * Math.max(0, lastFull - firstFull + 1) + 6];
+        int size = 0;
+
+        result[size++] = from;
+
+        if (firstFull > lastFull) {
+            size = addExtremes(result, size, from, to, to);
+            return finish(result, size, to);
+        }
+
+        // the partial buckets at both ends are scanned
+        size = addExtremes(result, size, from, (firstFull << level) - 1, to);
+
+        for (int j = firstFull; j <= lastFull; j++) {
+            size = add(result, size, Math.min(mins[j], maxs[j]), to);
+            size = add(result, size, Math.max(mins[j], maxs[j]), to);
+        }
+
+        size = addExtremes(result, size, (lastFull + 1) << level, to, to);
+
+        return finish(result, size, to);
+    }
+
+    /**
+     * Adds the indices of the min. and max. values of [first..last] in ascending order
+     */
+    private int addExtremes(int[] result, int size, int first, int last, int to) {
+        if (first > last) {
+            return size;
+        }
+
+        int min = first;
+        int max = first;
+
+        for (int i = first + 1; i <= last; i++) {
+            if (y[i] < y[min]) {
+                min = i;
+            }
+            if (y[i] > y[max]) {
+                max = i;
+            }
+        }
+
+        size = add(result, size, Math.min(min, max), to);
+        return add(result, size, Math.max(min, max), to);
+    }
+
+    private static int add(int[] result, int size, int idx, int to) {
+        if (idx > result[size - 1] && idx < to) {
+            result[size++] = idx;
+        }
+        return size;
+    }
+
+    private static int[] finish(int[] result, int size, int to) {
+        if (to > result[size - 1]) {
+            result[size++] = to;
+        }
+
+        return Arrays.copyOf(result, size);
+    }
+}
@@ -0,0 +1,204 @@
+package main.chart;
+
+/**
+ * A chart series as parallel arrays of x- and y-values. The x-values should
+ * be ascending. The arrays are not copied.
+ *
+ * @author Martin Steiger
+ */
+public class Series {
+
+    private final double[] x;
+    private final double[] y;
+
+    private final double minX;
+    private final double maxX;
+    private final double minY;
+    private final double maxY;
+
+    private MinMaxPyramid pyramid;
+
+    /**
+     * @param x the x-values
+     * @param y the y-values (same length)
+     */
+    public Series(double[] x, double[] y) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("x and y must have the same length");
+        }
+
+        this.x = x;
+        this.y = y;
+
+        double x0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY;
+        double y0 = Double.POSITIVE_INFINITY;
+        double y1 = Double.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < x.length; i++) {
+            x0 = Math.min(x0, x[i]);
+            x1 = Math.max(x1, x[i]);
+            y0 = Math.min(y0, y[i]);
+            y1 = Math.max(y1, y[i]);
+        }
+
+        minX = x0;
+        maxX = x1;
+        minY = y0;
+        maxY = y1;
+    }
+
+    /**
+     * @return the number of points
+     */
+    public int size() {
+        return x.length;
+    }
+
+    /**
+     * @return true if the series has no points
+     */
+    public boolean isEmpty() {
+        return x.length == 0;
+    }
+
+    /**
+     * @param i the index
+     * @return the x-value
+     */
+    public double getX(int i) {
+        return x[i];
+    }
+
+    /**
+     * @param i the index
+     * @return the y-value
+     */
+    public double getY(int i) {
+        return y[i];
+    }
+
+    /**
+     * @return the x-values (not copied)
+     */
+    public double[] getX() {
+        return x;
+    }
+
+    /**
+     * @return the y-values (not copied)
+     */
+    public double[] getY() {
+        return y;
+    }
+
+    /**
+     * @return the min./max. pyramid of the y-values (computed once)
+     */
+    public MinMaxPyramid getPyramid() {
+        if (pyramid == null) {
+            pyramid = new MinMaxPyramid(y);
+        }
+
+        return pyramid;
+    }
+
+    /**
+     * Binary search for an x-value
+     *
+     * @param value the x-value
+     * @return the index of the last point at or before the x-value or -1 if
+     * the value is before the first point
+     */
+    public int indexOf(double value) {
+        int lo = 0;
+        int hi = x.length - 1;
+        int result = -1;
+
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+
+            if (x[mid] <= value) {
+                result = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param value the x-value
+     * @return the index of the point that is closest to the x-value or -1 if
+     * the series is empty
+     */
+    public int indexOfNearest(double value) {
+        int idx = indexOf(value);
+
+        if (idx < 0) {
+            return isEmpty() ? -1 : 0;
+        }
+
+        if (idx + 1 < x.length && x[idx + 1] - value < value - x[idx]) {
+            return idx + 1;
+        }
+
+        return idx;
+    }
+
+    /**
+     * @param value the x-value
+     * @return the linearly interpolated y-value (clamped to the series) or
+     * NaN if the series is empty
+     */
+    public double interpolate(double value) {
+        int idx = indexOf(value);
+
+        if (idx < 0) {
+            return isEmpty() ? Double.NaN : y[0];
+        }
+
+        if (idx + 1 >= x.length) {
+            return y[idx];
+        }
+
+        double dx = x[idx + 1] - x[idx];
+
+        if (dx <= 0) {
+            return y[idx];
+        }
+
+        double f = (value - x[idx]) / dx;
+        return y[idx] + f * (y[idx + 1] - y[idx]);
+    }
+
+    /**
+     * @return the smallest x-value
+     */
+    public double getMinX() {
+        return minX;
+    }
+
+    /**
+     * @return the largest x-value
+     */
+    public double getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * @return the smallest y-value
+     */
+    public double getMinY() {
+        return minY;
+    }
+
+    /**
+     * @return the largest y-value
+     */
+    public double getMaxY() {
+        return maxY;
+    }
+}
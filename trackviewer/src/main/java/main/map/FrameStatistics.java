@@ -0,0 +1,71 @@
+package main.map;
+
+/**
+ * Collects paint times and summarizes them for a time window
+ *
+ * @author Martin Steiger
+ */
+public class FrameStatistics {
+
+    /**
+     * The frame time budget in millisecs. (60 fps)
+     */
+    public static final double BUDGET = 1000.0 / 60.0;
+
+    private final long window;
+
+    private long windowStart;
+    private int frames;
+    private int overBudget;
+    private long total;
+    private long max;
+
+    private String summary = "";
+
+    /**
+     * @param window the length of the time window in millisecs.
+     */
+    public FrameStatistics(long window) {
+        this.window = window * 1000000L;
+        this.windowStart = System.nanoTime();
+    }
+
+    /**
+     * @param nanos the duration of one frame in nanosecs.
+     * @return true if a time window has been completed and the summary has
+     * changed
+     */
+    public boolean record(long nanos) {
+        frames++;
+        total += nanos;
+        max = Math.max(max, nanos);
+
+        if (nanos / 1000000.0 > BUDGET) {
+            overBudget++;
+        }
+
+        long now = System.nanoTime();
+
+        if (now - windowStart < window) {
+            return false;
+        }
+
+        summary = String.format("%d frames, avg. %.1fms, max. %.1fms, %d over budget",
+                frames, total / 1000000.0 / frames, max / 1000000.0, overBudget);
+
+        windowStart = now;
+        frames = 0;
+        overBudget = 0;
+        total = 0;
+        max = 0;
+
+        return true;
+    }
+
+    /**
+     * @return the summary of the last completed time window
+     */
+    public String getSummary() {
+        return summary;
+    }
+}
@@ -0,0 +1,308 @@
+package main.map;
+
+import java.awt.Rectangle;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jxmapviewer.viewer.GeoPosition;
+import org.jxmapviewer.viewer.TileFactory;
+
+import track.Simplification;
+
+import common.GeoUtils;
+
+/**
+ * A route in normalized Web-Mercator coordinates. The (expensive) projection
+ * is computed only once, moving to a zoom level is a multiplication with the
+ * map width. The integer pixel coordinates are cached per zoom level, so
+ * that panning only requires a translation.
+ *
+ * @author Martin Steiger
+ */
+public class ProjectedRoute {
+
+    /**
+     * The number of segments per chunk. Every chunk has its own bounding box
+     * for culling.
+     */
+    public static final int CHUNK_SIZE = 256;
+
+    /**
+     * Points that change the shape of the route by less than this
+     * (in pixels) are dropped
+     */
+    private static final double TOLERANCE = 0.5;
+
+    /**
+     * The tolerance (in pixels) for quick previews
+     */
+    private static final double COARSE_TOLERANCE = 2.0;
+
+    private final double[] xs;
+    private final double[] ys;
+
+    private final Simplification simplification;
+    private final double metersPerUnit;
+
+    private final Map<Integer, Level> levels = new HashMap<>();
+    private final Map<Integer, Level> coarseLevels = new HashMap<>();
+
+    /**
+     * The route in world bitmap pixel coordinates of one zoom level
+     */
+    public static class Level {
+
+        private final int[] xs;
+        private final int[] ys;
+        private final int[] indices;
+
+        /**
+         * (minX, minY, maxX, maxY) for every chunk
+         */
+        private final int[] chunkBounds;
+
+        Level(int[] xs, int[] ys, int[] indices) {
+            this.xs = xs;
+            this.ys = ys;
+            this.indices = indices;
+
+            int chunks = getChunkCount();
+            chunkBounds = new int[chunks * 4];
+
+            for (int c = 0; c < chunks; c++) {
+                int minX = Integer.MAX_VALUE;
+                int minY = Integer.MAX_VALUE;
+                int maxX = Integer.MIN_VALUE;
+                int maxY = Integer.MIN_VALUE;
+
+                int last = getChunkEnd(c);
+                for (int i = getChunkStart(c); i <= last; i++) {
+                    minX = Math.min(minX, xs[i]);
+                    minY = Math.min(minY, ys[i]);
+                    maxX = Math.max(maxX, xs[i]);
+                    maxY = Math.max(maxY, ys[i]);
+                }
+
+                chunkBounds[c * 4 + 0] = minX;
+                chunkBounds[c * 4 + 1] = minY;
+                chunkBounds[c * 4 + 2] = maxX;
+                chunkBounds[c * 4 + 3] = maxY;
+            }
+        }
+
+        /**
+         * @return the number of chunks
+         */
+        public int getChunkCount() {
+            return (xs.length < 2) ? xs.length : (xs.length - 2) / CHUNK_SIZE + 1;
+        }
+
+        /**
+         * @param chunk the chunk index
+         * @return the index of the first point of the chunk
+         */
+        public int getChunkStart(int chunk) {
+            return chunk * CHUNK_SIZE;
+        }
+
+        /**
+         * Chunks share their first and last point with their neighbors
+         *
+         * @param chunk the chunk index
+         * @return the index of the last point of the chunk
+         */
+        public int getChunkEnd(int chunk) {
+            return Math.min((chunk + 1) * CHUNK_SIZE, xs.length - 1);
+        }
+
+        /**
+         * @param chunk the chunk index
+         * @param rect the rectangle in world bitmap pixels
+         * @return true if the bounding box of the chunk intersects the
+         * rectangle
+         */
+        public boolean intersects(int chunk, Rectangle rect) {
+            int i = chunk * 4;
+            return chunkBounds[i + 2] >= rect.x && chunkBounds[i] <= rect.x + rect.width
+                    && chunkBounds[i + 3] >= rect.y && chunkBounds[i + 1] <= rect.y + rect.height;
+        }
+
+        /**
+         * @return the x coordinates (not a copy)
+         */
+        public int[] getX() {
+            return xs;
+        }
+
+        /**
+         * @return the y coordinates (not a copy)
+         */
+        public int[] getY() {
+            return ys;
+        }
+
+        /**
+         * @param k the point index in this level
+         * @return the index of the point in the full route
+         */
+        public int getIndex(int k) {
+            return indices[k];
+        }
+
+        /**
+         * @return the number of points
+         */
+        public int size() {
+            return xs.length;
+        }
+    }
+
+    /**
+     * @param route the route (it is not referenced)
+     */
+    public ProjectedRoute(List<GeoPosition> route) {
+        this(route, null);
+    }
+
+    /**
+     * @param route the route (it is not referenced)
+     * @param simplification the importance of the route points or
+     * <code>null</code> to always use all points
+     */
+    public ProjectedRoute(List<GeoPosition> route, Simplification simplification) {
+        int count = route.size();
+
+        xs = new double[count];
+        ys = new double[count];
+
+        double minLat = 90;
+        double maxLat = -90;
+
+        for (int i = 0; i < count; i++) {
+            GeoPosition pos = route.get(i);
+            xs[i] = toNormalizedX(pos.getLongitude());
+            ys[i] = toNormalizedY(pos.getLatitude());
+
+            minLat = Math.min(minLat, pos.getLatitude());
+            maxLat = Math.max(maxLat, pos.getLatitude());
+        }
+
+        this.simplification = simplification;
+
+        // the scale of the projection at the center of the route
+        double lat = (count > 0) ? (minLat + maxLat) * 0.5 : 0;
+        this.metersPerUnit = 2 * Math.PI * GeoUtils.WGS84_MEAN_RADIUS * Math.cos(Math.toRadians(lat));
+    }
+
+    /**
+     * @return the number of points
+     */
+    public int size() {
+        return xs.length;
+    }
+
+    /**
+     * @param index the point index
+     * @return the normalized x coordinate [0..1]
+     */
+    public double getX(int index) {
+        return xs[index];
+    }
+
+    /**
+     * @param index the point index
+     * @return the normalized y coordinate [0..1]
+     */
+    public double getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * @param tileFactory the tile factory that defines the map size
+     * @param zoom the zoom level
+     * @return the route in world bitmap pixel coordinates
+     */
+    public Level getLevel(TileFactory tileFactory, int zoom) {
+        return getLevel(tileFactory, zoom, false);
+    }
+
+    /**
+     * @param tileFactory the tile factory that defines the map size
+     * @param zoom the zoom level
+     * @param coarse true to get a more simplified route for quick previews
+     * @return the route in world bitmap pixel coordinates
+     */
+    public synchronized Level getLevel(TileFactory tileFactory, int zoom, boolean coarse) {
+        Map<Integer, Level> cache = coarse ? coarseLevels : levels;
+        Level level = cache.get(zoom);
+
+        if (level == null) {
+            double width = getMapWidth(tileFactory, zoom);
+
+            int[] indices = getIndices(width, coarse ? COARSE_TOLERANCE : TOLERANCE);
+
+            int[] px = new int[indices.length];
+            int[] py = new int[indices.length];
+
+            for (int k = 0; k < indices.length; k++) {
+                int i = indices[k];
+                px[k] = (int) (xs[i] * width);
+                py[k] = (int) (ys[i] * width);
+            }
+
+            level = new Level(px, py, indices);
+            cache.put(zoom, level);
+        }
+
+        return level;
+    }
+
+    /**
+     * @param width the map width in pixels
+     * @param tolerance the tolerance in pixels
+     * @return the indices of the points that are relevant at this map width
+     */
+    private int[] getIndices(double width, double tolerance) {
+        if (simplification == null) {
+            int[] indices = new int[xs.length];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = i;
+            }
+            return indices;
+        }
+
+        double metersPerPixel = metersPerUnit / width;
+        return simplification.getIndices(tolerance * metersPerPixel);
+    }
+
+    /**
+     * @param tileFactory the tile factory
+     * @param zoom the zoom level
+     * @return the width (and height) of the world bitmap in pixels
+     */
+    public static double getMapWidth(TileFactory tileFactory, int zoom) {
+        return (double) tileFactory.getMapSize(zoom).width * tileFactory.getTileSize(zoom);
+    }
+
+    /**
+     * @param lon the longitude in degrees
+     * @return the normalized x coordinate [0..1]
+     */
+    public static double toNormalizedX(double lon) {
+        return 0.5 + lon / 360.0;
+    }
+
+    /**
+     * Uses the same clamping as the tile factory's geoToPixel()
+     *
+     * @param lat the latitude in degrees
+     * @return the normalized y coordinate [0..1]
+     */
+    public static double toNormalizedY(double lat) {
+        double e = Math.sin(Math.toRadians(lat));
+        e = Math.max(-0.9999, Math.min(0.9999, e));
+
+        return 0.5 - Math.log((1 + e) / (1 - e)) / (4 * Math.PI);
+    }
+}
@@ -0,0 +1,247 @@
+package main.map;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jxmapviewer.viewer.TileFactory;
+
+/**
+ * Finds the route segment closest to a point in world bitmap coordinates.
+ * For every zoom level the projected segments are sorted into a uniform
+ * grid once, so that a hit test only looks at a few cells.
+ *
+ * @author Martin Steiger
+ */
+public class RouteHitTester {
+
+    /**
+     * The edge length of a grid cell in pixels
+     */
+    private static final int CELL_SIZE = 64;
+
+    private final List<ProjectedRoute> routes;
+    private final Map<Integer, Grid> grids = new HashMap<>();
+
+    /**
+     * The result of a hit test
+     */
+    public static class Hit {
+
+        private final int route;
+        private final int index;
+        private final double distance;
+
+        Hit(int route, int index, double distance) {
+            this.route = route;
+            this.index = index;
+            this.distance = distance;
+        }
+
+        /**
+         * @return the index of the route
+         */
+        public int getRoute() {
+            return route;
+        }
+
+        /**
+         * @return the index of the closest point in the route
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the distance in pixels
+         */
+        public double getDistance() {
+            return distance;
+        }
+    }
+
+    /**
+     * @param routes the list of projected routes (not copied)
+     */
+    public RouteHitTester(List<ProjectedRoute> routes) {
+        this.routes = routes;
+    }
+
+    /**
+     * @param tileFactory the tile factory that defines the projection
+     * @param zoom the zoom level
+     * @param x the x coord. in world bitmap pixels
+     * @param y the y coord. in world bitmap pixels
+     * @param tolerance the max. distance in pixels
+     * @return the closest hit or <code>null</code>
+     */
+    public Hit hitTest(TileFactory tileFactory, int zoom, double x, double y, double tolerance) {
+        Grid grid = getGrid(tileFactory, zoom);
+
+        int col0 = (int) Math.floor((x - tolerance) / CELL_SIZE);
+        int col1 = (int) Math.floor((x + tolerance) / CELL_SIZE);
+        int row0 = (int) Math.floor((y - tolerance) / CELL_SIZE);
+        int row1 = (int) Math.floor((y + tolerance) / CELL_SIZE);
+
+        double bestDistSq = tolerance * tolerance;
+        Hit best = null;
+
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                Bucket bucket = grid.cells.get(getKey(row, col));
+
+                if (bucket == null) {
+                    continue;
+                }
+
+                for (int i = 0; i < bucket.size; i++) {
+                    long item = bucket.items[i];
+                    int route = (int) (item >>> 32);
+                    int seg = (int) item;
+
+                    double[] xs = grid.xs[route];
+                    double[] ys = grid.ys[route];
+
+                    double x1 = xs[seg];
+                    double y1 = ys[seg];
+                    double dx = xs[seg + 1] - x1;
+                    double dy = ys[seg + 1] - y1;
+                    double lenSq = dx * dx + dy * dy;
+
+                    double t = 0;
+                    if (lenSq > 0) {
+                        t = ((x - x1) * dx + (y - y1) * dy) / lenSq;
+                        t = Math.max(0, Math.min(1, t));
+                    }
+
+                    double px = x1 + t * dx - x;
+                    double py = y1 + t * dy - y;
+                    double distSq = px * px + py * py;
+
+                    if (distSq <= bestDistSq) {
+                        bestDistSq = distSq;
+                        best = new Hit(route, (t < 0.5) ? seg : seg + 1, Math.sqrt(distSq));
+                    }
+                }
+            }
+        }
+
+        return best;
+    }
+
+    private Grid getGrid(TileFactory tileFactory, int zoom) {
+        Grid grid = grids.get(zoom);
+
+        if (grid == null) {
+            grid = new Grid(tileFactory, zoom);
+            grids.put(zoom, grid);
+        }
+
+        return grid;
+    }
+
+    private static long getKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    private class Grid {
+
+        private final double[][] xs;
+        private final double[][] ys;
+        private final Map<Long, Bucket> cells = new HashMap<>();
+
+        Grid(TileFactory tileFactory, int zoom) {
+            xs = new double[routes.size()][];
+            ys = new double[routes.size()][];
+
+            double width = ProjectedRoute.getMapWidth(tileFactory, zoom);
+
+            for (int r = 0; r < routes.size(); r++) {
+                ProjectedRoute route = routes.get(r);
+
+                xs[r] = new double[route.size()];
+                ys[r] = new double[route.size()];
+
+                for (int i = 0; i < route.size(); i++) {
+                    xs[r][i] = route.getX(i) * width;
+                    ys[r][i] = route.getY(i) * width;
+                }
+
+                for (int i = 0; i < route.size() - 1; i++) {
+                    addSegment(r, i);
+                }
+            }
+        }
+
+        /**
+         * Adds the segment to all cells that it passes through. The cells
+         * are walked along the segment (Amanatides &amp; Woo) so that long
+         * diagonal segments do not fill their entire bounding box.
+         */
+        private void addSegment(int route, int seg) {
+            double[] x = xs[route];
+            double[] y = ys[route];
+
+            double x0 = x[seg] / CELL_SIZE;
+            double y0 = y[seg] / CELL_SIZE;
+            double dx = x[seg + 1] / CELL_SIZE - x0;
+            double dy = y[seg + 1] / CELL_SIZE - y0;
+
+            int col = (int) Math.floor(x0);
+            int row = (int) Math.floor(y0);
+            int endCol = (int) Math.floor(x0 + dx);
+            int endRow = (int) Math.floor(y0 + dy);
+
+            int stepX = (dx > 0) ? 1 : -1;
+            int stepY = (dy > 0) ? 1 : -1;
+
+            // the parameter t in [0..1] at which the next column/row boundary is crossed
+            double tDeltaX = (dx != 0) ? Math.abs(1 / dx) : Double.POSITIVE_INFINITY;
+            double tDeltaY = (dy != 0) ? Math.abs(1 / dy) : Double.POSITIVE_INFINITY;
+            double tMaxX = (dx != 0) ? ((dx > 0 ? col + 1 : col) - x0) / dx : Double.POSITIVE_INFINITY;
+            double tMaxY = (dy != 0) ? ((dy > 0 ? row + 1 : row) - y0) / dy : Double.POSITIVE_INFINITY;
+
+            long item = ((long) route << 32) | seg;
+
+            addItem(row, col, item);
+
+            while (col != endCol || row != endRow) {
+                if (row == endRow || (col != endCol && tMaxX < tMaxY)) {
+                    col += stepX;
+                    tMaxX += tDeltaX;
+                } else {
+                    row += stepY;
+                    tMaxY += tDeltaY;
+                }
+
+                addItem(row, col, item);
+            }
+        }
+
+        private void addItem(int row, int col, long item) {
+            long key = getKey(row, col);
+            Bucket bucket = cells.get(key);
+
+            if (bucket == null) {
+                bucket = new Bucket();
+                cells.put(key, bucket);
+            }
+
+            bucket.add(item);
+        }
+    }
+
+    private static class Bucket {
+
+        private long[] items = new long[4];
+        private int size;
+
+        void add(long item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+    }
+}
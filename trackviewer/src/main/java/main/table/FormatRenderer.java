@@ -37,6 +37,12 @@ public class FormatRenderer extends DefaultTableCellRenderer {
     @Override
     public void setValue(Object value) {
         String v = null;
+
+        if (value == null) {
+            super.setValue("");
+            return;
+        }
+
         try {
             v = formatter.format(value);
         } catch (IllegalArgumentException e) {
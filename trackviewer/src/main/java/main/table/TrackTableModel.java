@@ -5,6 +5,8 @@ import java.util.List;
 
 import javax.swing.table.AbstractTableModel;
 
+import track.SensorChannel;
+import track.SensorColumn;
 import track.Track;
 
 /**
@@ -16,10 +18,10 @@ public final class TrackTableModel extends AbstractTableModel {
 
     private static final long serialVersionUID = 819860756869723997L;
     private final List<Track> tracks;
-    private final String[] columnIds = {"date", "distance", "time", "speed", "altitude", "comments"};
-    private final String[] columnLabels = {"Date", "Distance (km)", "Time", "Avg. Speed (km/h)", "Altitude Diff. (m)", "Comments"};
-    private final Class<?>[] columnClass = {Date.class, Double.class, Date.class, Double.class, Double.class, String.class};
-    private final boolean[] columnEditable = {false, false, false, false, false, true};
+    private final String[] columnIds = {"date", "distance", "time", "speed", "altitude", "heartrate", "power", "comments"};
+    private final String[] columnLabels = {"Date", "Distance (km)", "Time", "Avg. Speed (km/h)", "Altitude Diff. (m)", "Avg. HR (bpm)", "Avg. Power (W)", "Comments"};
+    private final Class<?>[] columnClass = {Date.class, Double.class, Date.class, Double.class, Double.class, Double.class, Double.class, String.class};
+    private final boolean[] columnEditable = {false, false, false, false, false, false, false, true};
 
     /**
      * @param tracks the list of tracks
@@ -28,6 +30,13 @@ public final class TrackTableModel extends AbstractTableModel {
         this.tracks = tracks;
     }
 
+    /**
+     * @return the list of tracks (not a copy)
+     */
+    public List<Track> getTracks() {
+        return tracks;
+    }
+
     /**
      * @return the columnLabels
      */
@@ -81,18 +90,33 @@ public final class TrackTableModel extends AbstractTableModel {
                 return track.getTotalElevationDifference();
 
             case 5:
+                return getAverage(track, SensorChannel.HEART_RATE);
+
+            case 6:
+                return getAverage(track, SensorChannel.POWER);
+
+            case 7:
                 return track.getComments();
         }
 
         return track;
     }
 
+    /**
+     * @return the average or <code>null</code> if the channel has not been recorded
+     */
+    private static Double getAverage(Track track, SensorChannel channel) {
+        SensorColumn column = track.getSensorColumn(channel);
+
+        return (column != null) ? column.getAverage() : null;
+    }
+
     @Override
     public void setValueAt(Object value, int row, int col) {
         Track track = tracks.get(row);
 
         switch (col) {
-            case 5:
+            case 7:
                 track.setComments(String.valueOf(value));
                 break;
         }
@@ -14,11 +14,16 @@ import javax.xml.bind.Unmarshaller;
 
 import org.jxmapviewer.viewer.GeoPosition;
 
+import common.SensorExtensions;
+import track.SensorChannel;
 import track.Track;
 import track.TrackPoint;
+import track.Waypoint;
 
 import com.garmin.xmlschemas.trainingcenterdatabase.v2.ActivityLapT;
 import com.garmin.xmlschemas.trainingcenterdatabase.v2.ActivityT;
+import com.garmin.xmlschemas.trainingcenterdatabase.v2.CoursePointT;
+import com.garmin.xmlschemas.trainingcenterdatabase.v2.CourseT;
 import com.garmin.xmlschemas.trainingcenterdatabase.v2.ObjectFactory;
 import com.garmin.xmlschemas.trainingcenterdatabase.v2.PositionT;
 import com.garmin.xmlschemas.trainingcenterdatabase.v2.TrackT;
@@ -59,38 +64,89 @@ public class TcxAdapter {
     public List<Track> convertToTracks(TrainingCenterDatabaseT tcx) {
         ArrayList<Track> list = new ArrayList<>();
 
-        for (ActivityT activity : tcx.getActivities().getActivity()) {
-            for (ActivityLapT lap : activity.getLap()) {
+        if (tcx.getActivities() != null) {
+            for (ActivityT activity : tcx.getActivities().getActivity()) {
+                for (ActivityLapT lap : activity.getLap()) {
+                    Track track = new Track();
+                    addTrackPoints(track, lap.getTrack());
+                    list.add(track);
+                }
+            }
+        }
+
+        if (tcx.getCourses() != null) {
+            for (CourseT course : tcx.getCourses().getCourse()) {
                 Track track = new Track();
+                track.setName(course.getName());
+                addTrackPoints(track, course.getTrack());
+
+                for (CoursePointT pt : course.getCoursePoint()) {
+                    track.addWaypoint(convertCoursePoint(pt));
+                }
+
+                list.add(track);
+            }
+        }
+
+        return list;
+    }
+
+    private static void addTrackPoints(Track track, List<TrackT> trks) {
+        for (TrackT trk : trks) {
 
-                for (TrackT trk : lap.getTrack()) {
+            for (TrackpointT pt : trk.getTrackpoint()) {
+                PositionT pos = pt.getPosition();
 
-                    for (TrackpointT pt : trk.getTrackpoint()) {
-                        PositionT pos = pt.getPosition();
+                if (pos != null) {
+                    double lat = pos.getLatitudeDegrees();
+                    double lon = pos.getLongitudeDegrees();
+                    Double ele = pt.getAltitudeMeters();
+                    GregorianCalendar time = pt.getTime().toGregorianCalendar();
+                    GeoPosition gp = new GeoPosition(lat, lon);
+                    TrackPoint tp = new TrackPoint(gp, time.getTime());
 
-                        if (pos != null) {
-                            double lat = pos.getLatitudeDegrees();
-                            double lon = pos.getLongitudeDegrees();
-                            Double ele = pt.getAltitudeMeters();
-                            GregorianCalendar time = pt.getTime().toGregorianCalendar();
-                            GeoPosition gp = new GeoPosition(lat, lon);
-                            TrackPoint tp = new TrackPoint(gp, time.getTime());
+                    if (ele == null) {
+                        ele = Double.NaN;
+                    }
+
+                    tp.setElevation(ele);
+                    track.addPoint(tp);
 
-                            if (ele == null) {
-                                ele = Double.NaN;
-                            }
+                    int index = track.getPoints().size() - 1;
+
+                    if (pt.getHeartRateBpm() != null) {
+                        track.setSensorValue(SensorChannel.HEART_RATE, index, pt.getHeartRateBpm().getValue());
+                    }
 
-                            tp.setElevation(ele);
-                            track.addPoint(tp);
-                        }
+                    if (pt.getCadence() != null) {
+                        track.setSensorValue(SensorChannel.CADENCE, index, pt.getCadence());
                     }
 
+                    if (pt.getExtensions() != null) {
+                        SensorExtensions.read(pt.getExtensions().getAny(), track, index);
+                    }
                 }
-                list.add(track);
             }
+
         }
+    }
 
-        return list;
+    private static Waypoint convertCoursePoint(CoursePointT pt) {
+        PositionT pos = pt.getPosition();
+        GeoPosition gp = new GeoPosition(pos.getLatitudeDegrees(), pos.getLongitudeDegrees());
+
+        Waypoint wpt = new Waypoint(gp);
+        wpt.setName(pt.getName());
+        wpt.setDescription(pt.getNotes());
+
+        Double ele = pt.getAltitudeMeters();
+        wpt.setElevation((ele != null) ? ele : Double.NaN);
+
+        if (pt.getTime() != null) {
+            wpt.setTime(pt.getTime().toGregorianCalendar().getTime());
+        }
+
+        return wpt;
     }
 
     /**
@@ -0,0 +1,33 @@
+package track;
+
+/**
+ * A value that is available for every point of a track
+ *
+ * @author Martin Steiger
+ */
+public interface Channel {
+
+    /**
+     * @return a short name (e.g. for a button)
+     */
+    public String getName();
+
+    /**
+     * @return a description of the channel
+     */
+    public String getDescription();
+
+    /**
+     * @return the unit of the values
+     */
+    public String getUnit();
+
+    /**
+     * Computes the values - use {@link Track#getChannel(Channel)} to get
+     * the cached values instead.
+     *
+     * @param track the track
+     * @return one value per track point
+     */
+    public double[] compute(Track track);
+}
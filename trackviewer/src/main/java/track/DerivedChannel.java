@@ -0,0 +1,159 @@
+package track;
+
+/**
+ * Channels that are derived from the distance, the time and the elevation
+ * of the track points. Rates are computed over a window around every point
+ * to suppress the noise of the recording.
+ *
+ * @author Martin Steiger
+ */
+public enum DerivedChannel implements Channel {
+
+    /**
+     * The speed of the track points in km/h
+     */
+    SPEED("Speed", "Speed", "km/h") {
+        @Override
+        public double[] compute(Track track) {
+            return track.getColumns().getSpeeds().clone();
+        }
+    },
+
+    /**
+     * The speed in km/h averaged over SPEED_WINDOW
+     */
+    SMOOTHED_SPEED("Smooth", "Smoothed speed", "km/h") {
+        @Override
+        public double[] compute(Track track) {
+            TrackColumns columns = track.getColumns();
+
+            // km/min -> km/h
+            return computeSlope(columns.getTimes(), columns.getDistances(), SPEED_WINDOW, 60.0);
+        }
+    },
+
+    /**
+     * The grade in percent over GRADE_WINDOW
+     */
+    GRADE("Grade", "Grade", "%") {
+        @Override
+        public double[] compute(Track track) {
+            TrackColumns columns = track.getColumns();
+
+            // m/km -> %
+            return computeSlope(columns.getDistances(), columns.getElevations(), GRADE_WINDOW, 0.1);
+        }
+    },
+
+    /**
+     * The vertical speed in m/h (VAM) over CLIMB_WINDOW
+     */
+    VERTICAL_SPEED("VAM", "Vertical speed", "m/h") {
+        @Override
+        public double[] compute(Track track) {
+            TrackColumns columns = track.getColumns();
+
+            // m/min -> m/h
+            return computeSlope(columns.getTimes(), columns.getElevations(), CLIMB_WINDOW, 60.0);
+        }
+    },
+
+    /**
+     * The pace in min/km, based on the smoothed speed
+     */
+    PACE("Pace", "Pace", "min/km") {
+        @Override
+        public double[] compute(Track track) {
+            double[] speeds = track.getChannel(SMOOTHED_SPEED);
+            double[] values = new double[speeds.length];
+
+            for (int i = 0; i < values.length; i++) {
+                values[i] = 60.0 / Math.max(speeds[i], 60.0 / MAX_PACE);
+            }
+
+            return values;
+        }
+    };
+
+    /**
+     * The time window of the smoothed speed in minutes
+     */
+    private static final double SPEED_WINDOW = 0.5;
+
+    /**
+     * The distance window of the grade in km
+     */
+    private static final double GRADE_WINDOW = 0.05;
+
+    /**
+     * The time window of the vertical speed in minutes
+     */
+    private static final double CLIMB_WINDOW = 1.0;
+
+    /**
+     * The largest pace in min/km - standing still is not infinitely slow
+     */
+    private static final double MAX_PACE = 30;
+
+    private final String name;
+    private final String description;
+    private final String unit;
+
+    private DerivedChannel(String name, String description, String unit) {
+        this.name = name;
+        this.description = description;
+        this.unit = unit;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * Computes dy/dx over a window that spans at least half the window size
+     * on either side of every point (less at the ends of the track)
+     *
+     * @param x the ascending x-values
+     * @param y the y-values
+     * @param window the size of the window in x units
+     * @param factor the factor that is applied to the slope
+     * @return the slope for every point
+     */
+    static double[] computeSlope(double[] x, double[] y, double window, double factor) {
+        int count = x.length;
+        double half = window * 0.5;
+        double[] values = new double[count];
+
+        int lo = 0;
+        int hi = 0;
+
+        for (int i = 0; i < count; i++) {
+            double xi = x[i];
+
+            while (lo < i && xi - x[lo + 1] >= half) {
+                lo++;
+            }
+
+            while (hi < count - 1 && x[hi] - xi < half) {
+                hi++;
+            }
+
+            double dx = x[hi] - x[lo];
+
+            values[i] = (dx > 0) ? factor * (y[hi] - y[lo]) / dx : 0;
+        }
+
+        return values;
+    }
+}
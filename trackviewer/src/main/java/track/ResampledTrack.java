@@ -0,0 +1,66 @@
+package track;
+
+/**
+ * The state of a track at equidistant steps of distance or time as
+ * primitive columns. The arrays are shared and must not be modified.
+ *
+ * @author Martin Steiger
+ */
+public class ResampledTrack {
+
+    private final double[] distances;
+    private final double[] times;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] elevations;
+
+    ResampledTrack(int count) {
+        distances = new double[count];
+        times = new double[count];
+        latitudes = new double[count];
+        longitudes = new double[count];
+        elevations = new double[count];
+    }
+
+    /**
+     * @return the number of samples
+     */
+    public int size() {
+        return distances.length;
+    }
+
+    /**
+     * @return the distance of every sample in meters
+     */
+    public double[] getDistances() {
+        return distances;
+    }
+
+    /**
+     * @return the elapsed time of every sample in millisecs.
+     */
+    public double[] getTimes() {
+        return times;
+    }
+
+    /**
+     * @return the latitude of every sample in degrees
+     */
+    public double[] getLatitudes() {
+        return latitudes;
+    }
+
+    /**
+     * @return the longitude of every sample in degrees
+     */
+    public double[] getLongitudes() {
+        return longitudes;
+    }
+
+    /**
+     * @return the elevation of every sample in meters
+     */
+    public double[] getElevations() {
+        return elevations;
+    }
+}
@@ -0,0 +1,188 @@
+package track;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.jxmapviewer.viewer.GeoPosition;
+
+/**
+ * Resamples tracks at a fixed distance or time step in a single pass over
+ * the track points. Values between two track points are interpolated
+ * linearly (the segments are short enough to ignore the curvature).
+ *
+ * @author Martin Steiger
+ */
+public class Resampler {
+
+    /**
+     * The axis of the resampling
+     */
+    public enum Axis {
+
+        /**
+         * The step is a distance in meters
+         */
+        DISTANCE,
+
+        /**
+         * The step is an elapsed time in millisecs.
+         */
+        TIME
+    }
+
+    /**
+     * The number of tracks that are resampled in one task of a batch
+     */
+    private static final int TRACKS_PER_TASK = 4;
+
+    /**
+     * @param track the track
+     * @param step the step in meters
+     * @return the samples
+     */
+    public static ResampledTrack byDistance(Track track, double step) {
+        return resample(track, Axis.DISTANCE, step, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @param track the track
+     * @param step the step in millisecs.
+     * @return the samples
+     */
+    public static ResampledTrack byTime(Track track, double step) {
+        return resample(track, Axis.TIME, step, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @param track the track
+     * @param axis the axis of the step
+     * @param step the step in meters or millisecs.
+     * @param limit the last distance or time to sample (limited to the track)
+     * @return the samples from the start to the limit
+     */
+    public static ResampledTrack resample(Track track, Axis axis, double step, double limit) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("step must be positive");
+        }
+
+        List<TrackPoint> points = track.getPoints();
+        TimeIndex index = track.getTimeIndex();
+
+        long[] times = index.getTimes();
+        double[] distances = index.getDistances();
+        int n = times.length;
+
+        if (n == 0) {
+            return new ResampledTrack(0);
+        }
+
+        double total = (axis == Axis.TIME) ? times[n - 1] : distances[n - 1];
+        double end = Math.min(limit, total);
+        int count = (int) Math.floor(end / step + 1e-9) + 1;
+
+        ResampledTrack result = new ResampledTrack(count);
+        double[] outDist = result.getDistances();
+        double[] outTime = result.getTimes();
+        double[] outLat = result.getLatitudes();
+        double[] outLon = result.getLongitudes();
+        double[] outEle = result.getElevations();
+
+        int j = 0;
+
+        for (int i = 0; i < count; i++) {
+            double key = i * step;
+
+            // the last point at or before the key - the same as TimeIndex
+            while (j < n - 1 && getKey(axis, times, distances, j + 1) <= key) {
+                j++;
+            }
+
+            TrackPoint p0 = points.get(j);
+            GeoPosition pos0 = p0.getPos();
+
+            if (j == n - 1) {
+                outDist[i] = distances[j];
+                outTime[i] = times[j];
+                outLat[i] = pos0.getLatitude();
+                outLon[i] = pos0.getLongitude();
+                outEle[i] = p0.getElevation();
+                continue;
+            }
+
+            TrackPoint p1 = points.get(j + 1);
+            GeoPosition pos1 = p1.getPos();
+
+            double k0 = getKey(axis, times, distances, j);
+            double k1 = getKey(axis, times, distances, j + 1);
+            double f = (k1 > k0) ? Math.max(0, Math.min(1, (key - k0) / (k1 - k0))) : 0;
+
+            outDist[i] = distances[j] + f * (distances[j + 1] - distances[j]);
+            outTime[i] = times[j] + f * (times[j + 1] - times[j]);
+            outLat[i] = pos0.getLatitude() + f * (pos1.getLatitude() - pos0.getLatitude());
+            outLon[i] = pos0.getLongitude() + f * (pos1.getLongitude() - pos0.getLongitude());
+            outEle[i] = p0.getElevation() + f * (p1.getElevation() - p0.getElevation());
+        }
+
+        return result;
+    }
+
+    /**
+     * Resamples several tracks in parallel
+     *
+     * @param tracks the tracks
+     * @param axis the axis of the step
+     * @param step the step in meters or millisecs.
+     * @return the samples of every track (in the same order)
+     */
+    public static List<ResampledTrack> resampleAll(List<Track> tracks, Axis axis, double step) {
+        ResampledTrack[] results = new ResampledTrack[tracks.size()];
+
+        ForkJoinPool.commonPool().invoke(new BatchTask(tracks, axis, step, results, 0, results.length));
+
+        return Arrays.asList(results);
+    }
+
+    private static double getKey(Axis axis, long[] times, double[] distances, int idx) {
+        return (axis == Axis.TIME) ? times[idx] : distances[idx];
+    }
+
+    /**
+     * Resamples a range of tracks - large ranges are split
+     */
+    private static class BatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 4307811257203349153L;
+
+        private final List<Track> tracks;
+        private final Axis axis;
+        private final double step;
+        private final ResampledTrack[] results;
+        private final int from;
+        private final int to;
+
+        BatchTask(List<Track> tracks, Axis axis, double step, ResampledTrack[] results, int from, int to) {
+            this.tracks = tracks;
+            this.axis = axis;
+            this.step = step;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TRACKS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    results[i] = resample(tracks.get(i), axis, step, Double.POSITIVE_INFINITY);
+                }
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new BatchTask(tracks, axis, step, results, from, mid),
+                    new BatchTask(tracks, axis, step, results, mid, to));
+        }
+    }
+}
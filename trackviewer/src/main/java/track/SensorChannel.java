@@ -0,0 +1,90 @@
+package track;
+
+/**
+ * Channels that are recorded by sensors. They are optional and may be
+ * present for a part of the track points only.
+ *
+ * @author Martin Steiger
+ */
+public enum SensorChannel implements Channel {
+
+    /**
+     * The heart rate in beats per minute
+     */
+    HEART_RATE("HR", "Heart rate", "bpm", true),
+
+    /**
+     * The cadence in revolutions (or steps) per minute
+     */
+    CADENCE("Cad", "Cadence", "rpm", true),
+
+    /**
+     * The power in watts
+     */
+    POWER("Power", "Power", "W", true),
+
+    /**
+     * The temperature in degrees Celsius
+     */
+    TEMPERATURE("Temp", "Temperature", "\u00B0C", false);
+
+    private final String name;
+    private final String description;
+    private final String unit;
+    private final boolean integer;
+
+    private SensorChannel(String name, String description, String unit, boolean integer) {
+        this.name = name;
+        this.description = description;
+        this.unit = unit;
+        this.integer = integer;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String getUnit() {
+        return unit;
+    }
+
+    /**
+     * @return true if the values are whole numbers (stored as short)
+     */
+    public boolean isInteger() {
+        return integer;
+    }
+
+    /**
+     * Missing values are filled with the previous recorded value (or the
+     * first one at the start). All values are 0 if the channel is absent.
+     */
+    @Override
+    public double[] compute(Track track) {
+        double[] values = new double[track.getPoints().size()];
+        SensorColumn column = track.getSensorColumn(this);
+
+        if (column == null) {
+            return values;
+        }
+
+        double last = column.get(column.getFirstIndex());
+
+        for (int i = 0; i < values.length; i++) {
+            if (column.isPresent(i)) {
+                last = column.get(i);
+            }
+
+            values[i] = last;
+        }
+
+        return values;
+    }
+}
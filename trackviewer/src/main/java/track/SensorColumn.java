@@ -0,0 +1,104 @@
+package track;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The values of a sensor channel for the points of a track. Whole numbers
+ * are stored as short, other values as float. A bitmap marks the points
+ * that have a value.
+ *
+ * @author Martin Steiger
+ */
+public class SensorColumn {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final boolean integer;
+    private final BitSet present = new BitSet();
+
+    private short[] shortValues;
+    private float[] floatValues;
+
+    /**
+     * @param channel the channel
+     */
+    public SensorColumn(SensorChannel channel) {
+        this.integer = channel.isInteger();
+
+        if (integer) {
+            shortValues = new short[INITIAL_CAPACITY];
+        } else {
+            floatValues = new float[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * @param index the index of the track point
+     * @param value the value
+     */
+    public void set(int index, double value) {
+        if (integer) {
+            if (index >= shortValues.length) {
+                shortValues = Arrays.copyOf(shortValues, Math.max(index + 1, shortValues.length * 2));
+            }
+            shortValues[index] = (short) Math.round(value);
+        } else {
+            if (index >= floatValues.length) {
+                floatValues = Arrays.copyOf(floatValues, Math.max(index + 1, floatValues.length * 2));
+            }
+            floatValues[index] = (float) value;
+        }
+
+        present.set(index);
+    }
+
+    /**
+     * @param index the index of the track point
+     * @return true if the point has a value
+     */
+    public boolean isPresent(int index) {
+        return present.get(index);
+    }
+
+    /**
+     * @param index the index of the track point
+     * @return the value or NaN if the point has no value
+     */
+    public double get(int index) {
+        if (!present.get(index)) {
+            return Double.NaN;
+        }
+
+        return integer ? shortValues[index] : floatValues[index];
+    }
+
+    /**
+     * @return the index of the first point that has a value or -1
+     */
+    public int getFirstIndex() {
+        return present.nextSetBit(0);
+    }
+
+    /**
+     * @return the number of points that have a value
+     */
+    public int getCount() {
+        return present.cardinality();
+    }
+
+    /**
+     * @return the average of all values or NaN if there are none
+     */
+    public double getAverage() {
+        double sum = 0;
+        int count = 0;
+
+        for (int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1)) {
+            sum += integer ? shortValues[i] : floatValues[i];
+            count++;
+        }
+
+        return (count > 0) ? sum / count : Double.NaN;
+    }
+}
@@ -0,0 +1,150 @@
+package track;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.jxmapviewer.viewer.GeoPosition;
+
+import common.GeoUtils;
+
+/**
+ * Ranks the points of a track by their importance for the shape of the route
+ * (Visvalingam-Whyatt). The importance of a point is the effective area in
+ * square meters of the triangle it forms with its neighbors at the time it
+ * is eliminated. It is computed once, any level of detail is then a simple
+ * threshold test.
+ *
+ * @author Martin Steiger
+ */
+public class Simplification {
+
+    private final double[] importance;
+
+    private static class Entry implements Comparable<Entry> {
+
+        private final int index;
+        private final double area;
+
+        Entry(int index, double area) {
+            this.index = index;
+            this.area = area;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            return Double.compare(area, o.area);
+        }
+    }
+
+    /**
+     * @param route the route
+     */
+    public Simplification(List<GeoPosition> route) {
+        int count = route.size();
+
+        importance = new double[count];
+
+        if (count == 0) {
+            return;
+        }
+
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        GeoUtils.projectLocal(route, xs, ys);
+
+        int[] prev = new int[count];
+        int[] next = new int[count];
+        double[] area = new double[count];
+        boolean[] removed = new boolean[count];
+
+        PriorityQueue<Entry> queue = new PriorityQueue<>(Math.max(1, count));
+
+        for (int i = 0; i < count; i++) {
+            prev[i] = i - 1;
+            next[i] = i + 1;
+        }
+
+        for (int i = 1; i < count - 1; i++) {
+            area[i] = getArea(xs, ys, i - 1, i, i + 1);
+            queue.add(new Entry(i, area[i]));
+        }
+
+        // the end points are never removed
+        importance[0] = Double.POSITIVE_INFINITY;
+        importance[count - 1] = Double.POSITIVE_INFINITY;
+
+        double max = 0;
+
+        while (!queue.isEmpty()) {
+            Entry entry = queue.poll();
+            int i = entry.index;
+
+            // skip outdated entries (the area of the point has changed)
+            if (removed[i] || entry.area != area[i]) {
+                continue;
+            }
+
+            // a point must not become less important than the points
+            // that have been eliminated before
+            max = Math.max(max, entry.area);
+            importance[i] = max;
+            removed[i] = true;
+
+            int p = prev[i];
+            int n = next[i];
+            next[p] = n;
+            prev[n] = p;
+
+            if (p > 0) {
+                area[p] = getArea(xs, ys, prev[p], p, n);
+                queue.add(new Entry(p, area[p]));
+            }
+
+            if (n < count - 1) {
+                area[n] = getArea(xs, ys, p, n, next[n]);
+                queue.add(new Entry(n, area[n]));
+            }
+        }
+    }
+
+    /**
+     * @return the number of points
+     */
+    public int size() {
+        return importance.length;
+    }
+
+    /**
+     * @param index the point index
+     * @return the effective area in square meters (infinite for the end points)
+     */
+    public double getImportance(int index) {
+        return importance[index];
+    }
+
+    /**
+     * @param tolerance the tolerance in meters - points whose effective area
+     * is smaller than the square of the tolerance are dropped
+     * @return the indices of the remaining points in ascending order
+     */
+    public int[] getIndices(double tolerance) {
+        double threshold = tolerance * tolerance;
+
+        int[] indices = new int[importance.length];
+        int count = 0;
+
+        for (int i = 0; i < importance.length; i++) {
+            if (importance[i] >= threshold) {
+                indices[count++] = i;
+            }
+        }
+
+        return Arrays.copyOf(indices, count);
+    }
+
+    private static double getArea(double[] xs, double[] ys, int a, int b, int c) {
+        double cross = (xs[b] - xs[a]) * (ys[c] - ys[a]) - (ys[b] - ys[a]) * (xs[c] - xs[a]);
+        return Math.abs(cross) * 0.5;
+    }
+}
@@ -0,0 +1,215 @@
+package track;
+
+import java.util.List;
+
+import org.jxmapviewer.viewer.GeoPosition;
+
+/**
+ * Looks up the state of a track at an elapsed time or at a distance. The
+ * timestamps and distances are searched with a binary search, values between
+ * two track points are interpolated linearly.
+ *
+ * @author Martin Steiger
+ */
+public class TimeIndex {
+
+    private final List<TrackPoint> points;
+
+    /**
+     * The elapsed time of every point in millisecs.
+     */
+    private final long[] times;
+
+    /**
+     * The distance of every point in meters
+     */
+    private final double[] distances;
+
+    /**
+     * @param points the track points (not copied)
+     */
+    public TimeIndex(List<TrackPoint> points) {
+        this.points = points;
+        this.times = new long[points.size()];
+        this.distances = new double[points.size()];
+
+        if (times.length == 0) {
+            return;
+        }
+
+        long start = points.get(0).getTime().getTime();
+
+        for (int i = 0; i < times.length; i++) {
+            // the track may not be strictly ordered - keep the arrays monotonic
+            long time = points.get(i).getTime().getTime() - start;
+            double dist = points.get(i).getDistance();
+            times[i] = (i > 0) ? Math.max(times[i - 1], time) : time;
+            distances[i] = (i > 0) ? Math.max(distances[i - 1], dist) : dist;
+        }
+    }
+
+    /**
+     * @return the monotonic elapsed time of every point in millisecs. (not copied)
+     */
+    long[] getTimes() {
+        return times;
+    }
+
+    /**
+     * @return the monotonic distance of every point in meters (not copied)
+     */
+    double[] getDistances() {
+        return distances;
+    }
+
+    /**
+     * @return the elapsed time of the last point in millisecs.
+     */
+    public long getDuration() {
+        return (times.length > 0) ? times[times.length - 1] : 0;
+    }
+
+    /**
+     * @param time the elapsed time in millisecs.
+     * @return the index of the last point at or before the time (clamped to
+     * the track)
+     */
+    public int getIndex(long time) {
+        if (times.length == 0) {
+            return -1;
+        }
+
+        int lo = 0;
+        int hi = times.length - 1;
+
+        if (time >= times[hi]) {
+            return hi;
+        }
+
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+
+            if (times[mid] <= time) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        return lo;
+    }
+
+    /**
+     * @param dist the distance in meters
+     * @return the index of the last point at or before the distance (clamped
+     * to the track)
+     */
+    public int getIndexAtDistance(double dist) {
+        if (distances.length == 0) {
+            return -1;
+        }
+
+        int lo = 0;
+        int hi = distances.length - 1;
+
+        if (dist >= distances[hi]) {
+            return hi;
+        }
+
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+
+            if (distances[mid] <= dist) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        return lo;
+    }
+
+    /**
+     * @return the distance of the last point in meters
+     */
+    public double getTotalDistance() {
+        return (distances.length > 0) ? distances[distances.length - 1] : 0;
+    }
+
+    /**
+     * @param dist the distance in meters
+     * @return the interpolated elapsed time in millisecs.
+     */
+    public double getTimeAtDistance(double dist) {
+        int idx = getIndexAtDistance(dist);
+
+        if (idx < 0) {
+            return 0;
+        }
+
+        if (idx == distances.length - 1) {
+            return times[idx];
+        }
+
+        double span = distances[idx + 1] - distances[idx];
+        double f = (span > 0) ? Math.max(0, Math.min(1, (dist - distances[idx]) / span)) : 0;
+
+        return times[idx] + f * (times[idx + 1] - times[idx]);
+    }
+
+    /**
+     * @param time the elapsed time in millisecs.
+     * @return the interpolated position or <code>null</code> if the track is
+     * empty
+     */
+    public GeoPosition getPosition(long time) {
+        int idx = getIndex(time);
+
+        if (idx < 0) {
+            return null;
+        }
+
+        GeoPosition pos = points.get(idx).getPos();
+
+        if (idx == times.length - 1) {
+            return pos;
+        }
+
+        GeoPosition next = points.get(idx + 1).getPos();
+        double f = getFraction(time, idx);
+
+        return new GeoPosition(
+                pos.getLatitude() + f * (next.getLatitude() - pos.getLatitude()),
+                pos.getLongitude() + f * (next.getLongitude() - pos.getLongitude()));
+    }
+
+    /**
+     * @param time the elapsed time in millisecs.
+     * @return the interpolated distance in meters
+     */
+    public double getDistance(long time) {
+        int idx = getIndex(time);
+
+        if (idx < 0) {
+            return 0;
+        }
+
+        double dist = distances[idx];
+
+        if (idx == times.length - 1) {
+            return dist;
+        }
+
+        return dist + getFraction(time, idx) * (distances[idx + 1] - dist);
+    }
+
+    private double getFraction(long time, int idx) {
+        long span = times[idx + 1] - times[idx];
+
+        if (span <= 0) {
+            return 0;
+        }
+
+        return Math.max(0, Math.min(1, (time - times[idx]) / (double) span));
+    }
+}
@@ -1,10 +1,14 @@
 package track;
 
+import java.awt.geom.Rectangle2D;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.jxmapviewer.viewer.GeoPosition;
 
@@ -35,6 +39,16 @@ public class Track {
     private String comments;
     private Date startTime;
     private Double altDiff;
+    private Rectangle2D bounds;
+    private Simplification simplification;
+    private TimeIndex timeIndex;
+    private TrackColumns columns;
+    private final Map<Channel, double[]> channels = new HashMap<>();
+
+    /**
+     * Only the recorded sensor channels are stored
+     */
+    private final Map<SensorChannel, SensorColumn> sensors = new EnumMap<>(SensorChannel.class);
 
     /**
      * Default constructor (no name set)
@@ -61,6 +75,54 @@ public class Track {
      */
     public void addPoint(TrackPoint point) {
         points.add(point);
+        pointsChanged();
+    }
+
+    /**
+     * Discards all values that are derived from the track points. This must
+     * be called after existing track points have been modified. The derived
+     * values are computed once on demand and may be requested from any thread.
+     */
+    public synchronized void pointsChanged() {
+        altDiff = null;
+        bounds = null;
+        simplification = null;
+        timeIndex = null;
+        columns = null;
+        channels.clear();
+    }
+
+    /**
+     * @param channel the sensor channel
+     * @param index the index of the track point
+     * @param value the recorded value
+     */
+    public synchronized void setSensorValue(SensorChannel channel, int index, double value) {
+        SensorColumn column = sensors.get(channel);
+
+        if (column == null) {
+            column = new SensorColumn(channel);
+            sensors.put(channel, column);
+        }
+
+        column.set(index, value);
+        channels.remove(channel);
+    }
+
+    /**
+     * @param channel the sensor channel
+     * @return the recorded values or <code>null</code> if the channel is absent
+     */
+    public synchronized SensorColumn getSensorColumn(SensorChannel channel) {
+        return sensors.get(channel);
+    }
+
+    /**
+     * @param channel the sensor channel
+     * @return true if at least one value has been recorded
+     */
+    public synchronized boolean hasSensor(SensorChannel channel) {
+        return sensors.containsKey(channel);
     }
 
     /**
@@ -144,6 +206,86 @@ public class Track {
         return altDiff;
     }
 
+    /**
+     * @return the bounding box of the track in degrees (x = longitude, y =
+     * latitude) or <code>null</code> if the track is empty
+     */
+    public synchronized Rectangle2D getBounds() {
+        if (points.isEmpty()) {
+            return null;
+        }
+
+        if (bounds == null) {
+            GeoPosition first = points.get(0).getPos();
+
+            double minLat = first.getLatitude();
+            double maxLat = first.getLatitude();
+            double minLon = first.getLongitude();
+            double maxLon = first.getLongitude();
+
+            for (TrackPoint pt : points) {
+                GeoPosition pos = pt.getPos();
+                minLat = Math.min(minLat, pos.getLatitude());
+                maxLat = Math.max(maxLat, pos.getLatitude());
+                minLon = Math.min(minLon, pos.getLongitude());
+                maxLon = Math.max(maxLon, pos.getLongitude());
+            }
+
+            bounds = new Rectangle2D.Double(minLon, minLat, maxLon - minLon, maxLat - minLat);
+        }
+
+        return (Rectangle2D) bounds.clone();
+    }
+
+    /**
+     * @return the importance ranking of the track points (computed once)
+     */
+    public synchronized Simplification getSimplification() {
+        if (simplification == null) {
+            simplification = new Simplification(route);
+        }
+
+        return simplification;
+    }
+
+    /**
+     * @return the lookup of positions by elapsed time (computed once)
+     */
+    public synchronized TimeIndex getTimeIndex() {
+        if (timeIndex == null) {
+            timeIndex = new TimeIndex(getPoints());
+        }
+
+        return timeIndex;
+    }
+
+    /**
+     * @return the values of the track points as primitive arrays (computed once)
+     */
+    public synchronized TrackColumns getColumns() {
+        if (columns == null) {
+            columns = new TrackColumns(points);
+        }
+
+        return columns;
+    }
+
+    /**
+     * @param channel the channel
+     * @return the values of the channel for every track point (computed once,
+     * must not be modified)
+     */
+    public synchronized double[] getChannel(Channel channel) {
+        double[] values = channels.get(channel);
+
+        if (values == null) {
+            values = channel.compute(this);
+            channels.put(channel, values);
+        }
+
+        return values;
+    }
+
     /**
      * @return the total distance of the track in meters
      */
@@ -0,0 +1,73 @@
+package track;
+
+import java.util.List;
+
+/**
+ * The values of all track points as primitive columns in the units that
+ * are displayed (km, minutes, m, km/h). The arrays are shared and must not
+ * be modified.
+ *
+ * @author Martin Steiger
+ */
+public class TrackColumns {
+
+    private final double[] distances;
+    private final double[] times;
+    private final double[] elevations;
+    private final double[] speeds;
+
+    /**
+     * @param points the track points
+     */
+    public TrackColumns(List<TrackPoint> points) {
+        int count = points.size();
+
+        distances = new double[count];
+        times = new double[count];
+        elevations = new double[count];
+        speeds = new double[count];
+
+        for (int i = 0; i < count; i++) {
+            TrackPoint pt = points.get(i);
+            distances[i] = pt.getDistance() * 0.001;
+            times[i] = pt.getTime().getTime() / 60000.0;
+            elevations[i] = pt.getElevation();
+            speeds[i] = pt.getSpeed();
+        }
+    }
+
+    /**
+     * @return the number of track points
+     */
+    public int size() {
+        return distances.length;
+    }
+
+    /**
+     * @return the distance of every point in km
+     */
+    public double[] getDistances() {
+        return distances;
+    }
+
+    /**
+     * @return the time of every point in minutes
+     */
+    public double[] getTimes() {
+        return times;
+    }
+
+    /**
+     * @return the elevation of every point in meters
+     */
+    public double[] getElevations() {
+        return elevations;
+    }
+
+    /**
+     * @return the speed of every point in km/h
+     */
+    public double[] getSpeeds() {
+        return speeds;
+    }
+}
@@ -31,6 +31,8 @@ public class TrackElevationFixer {
                 points.get(i).setElevation(elevations.get(i));
             }
 
+            track.pointsChanged();
+
             log.info("Updated " + points.size() + " elevations");
         } catch (IOException e) {
             log.error("Error converting " + track, e);